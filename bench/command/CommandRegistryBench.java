@@ -0,0 +1,80 @@
+package command;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the startup cost of registering the commands from the build-time
+ * index with the classpath scan. Every run starts a fresh JVM, since the
+ * registry is created once per process and the scan cost is mostly class loading.
+ *
+ * Run with the application classes and libraries on the classpath:
+ * {@code java -cp <classpath> command.CommandRegistryBench [runs]}
+ */
+public final class CommandRegistryBench {
+    private static final String CHILD_ARGUMENT = "--child";
+
+    private CommandRegistryBench() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(CHILD_ARGUMENT)) {
+            long start = System.nanoTime();
+            CommandRegistry registry = CommandRegistry.getInstance();
+            long registerMicros = (System.nanoTime() - start) / 1000;
+            // Counted afterwards, listing the names creates every command
+            int commands = registry.getCommandNames().size();
+            System.out.println(registerMicros + " " + commands);
+            return;
+        }
+
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        System.out.println("Registration time over " + runs + " fresh JVMs each");
+        report("index", measure("index", runs));
+        report("scan", measure("scan", runs));
+    }
+
+    private static List<long[]> measure(String mode, int runs) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<long[]> results = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "-Dconsolex.commandIndex=" + mode, CommandRegistryBench.class.getName(), CHILD_ARGUMENT)
+                .redirectErrorStream(true).start();
+            String last = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                // The registry prints its own line first, the measurement comes last
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    last = line;
+                }
+            }
+            if (process.waitFor() != 0 || last == null) {
+                throw new IOException("Benchmark run failed: " + last);
+            }
+            long processMicros = (System.nanoTime() - start) / 1000;
+            String[] parts = last.split(" ");
+            results.add(new long[] {Long.parseLong(parts[0]), Long.parseLong(parts[1]), processMicros});
+        }
+        return results;
+    }
+
+    private static void report(String mode, List<long[]> results) {
+        List<Long> register = new ArrayList<>();
+        List<Long> process = new ArrayList<>();
+        for (long[] result : results) {
+            register.add(result[0]);
+            process.add(result[2]);
+        }
+        Collections.sort(register);
+        Collections.sort(process);
+        System.out.println(mode + ": " + results.get(0)[1] + " commands, register median "
+            + register.get(register.size() / 2) + " us (min " + register.get(0) + " us), whole JVM median "
+            + process.get(process.size() / 2) / 1000 + " ms");
+    }
+}
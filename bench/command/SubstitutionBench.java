@@ -0,0 +1,133 @@
+package command;
+
+/**
+ * Times the expansion of command substitutions with 1, 10 and 100 nested and
+ * side-by-side substitutions, comparing {@link SubstitutionParser} with the
+ * previous expansion, which searched the whole buffer for the innermost
+ * substitution again after every replacement. The commands are not run: a stub
+ * evaluator returns the last word of the command, so only parsing is measured.
+ *
+ * Run with the application classes on the classpath:
+ * {@code java -cp <classpath> command.SubstitutionBench}
+ */
+public final class SubstitutionBench {
+    private static final int[] SIZES = {1, 10, 100};
+    private static final int ROUNDS = 60;
+    private static final long ROUND_NANOS = 10_000_000;
+
+    private SubstitutionBench() {
+    }
+
+    public static void main(String[] args) {
+        System.out.println("Microseconds per expansion, best of " + ROUNDS + " rounds");
+        System.out.println("input        previous   one-pass");
+        for (int size : SIZES) {
+            report("nested " + size, nested(size));
+        }
+        for (int size : SIZES) {
+            report("flat " + size, flat(size));
+        }
+    }
+
+    private static void report(String name, String input) {
+        String expected = SubstitutionParser.expand(input, SubstitutionBench::lastWord);
+        if (!expected.equals(expandPrevious(input))) {
+            throw new IllegalStateException("The expansions of '" + name + "' differ");
+        }
+        double previous = time(() -> expandPrevious(input));
+        double onePass = time(() -> SubstitutionParser.expand(input, SubstitutionBench::lastWord));
+        System.out.println(pad(name, 13) + pad(format(previous), 11) + format(onePass));
+    }
+
+    /**
+     * The fastest time of one call over all rounds, in microseconds.
+     */
+    private static double time(Runnable expansion) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            int calls = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                expansion.run();
+                calls++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ROUND_NANOS);
+            best = Math.min(best, elapsed / 1000.0 / calls);
+        }
+        return best;
+    }
+
+    private static String nested(int depth) {
+        StringBuilder input = new StringBuilder("print ");
+        for (int i = 0; i < depth; i++) {
+            input.append("$(print ");
+        }
+        input.append("value");
+        for (int i = 0; i < depth; i++) {
+            input.append(')');
+        }
+        return input.toString();
+    }
+
+    private static String flat(int count) {
+        StringBuilder input = new StringBuilder("print");
+        for (int i = 0; i < count; i++) {
+            input.append(" $(print value").append(i).append(')');
+        }
+        return input.toString();
+    }
+
+    private static String lastWord(String command) {
+        return command.substring(command.lastIndexOf(' ') + 1);
+    }
+
+    /**
+     * The expansion replaced by SubstitutionParser, with the stub evaluator.
+     */
+    private static String expandPrevious(String input) {
+        StringBuilder result = new StringBuilder(input);
+        int[] indices;
+        while ((indices = findInnermostSubstitution(result.toString())) != null) {
+            String command = result.substring(indices[0] + 2, indices[1]);
+            result.replace(indices[0], indices[1] + 1, lastWord(command));
+        }
+        return result.toString();
+    }
+
+    private static int[] findInnermostSubstitution(String input) {
+        for (int i = 0; i < input.length() - 1; i++) {
+            if (input.charAt(i) == '$' && input.charAt(i + 1) == '(') {
+                int openParens = 1;
+                boolean hasNestedCommand = false;
+                for (int j = i + 2; j < input.length(); j++) {
+                    if (input.charAt(j) == '$' && j + 1 < input.length() && input.charAt(j + 1) == '(') {
+                        openParens++;
+                        hasNestedCommand = true;
+                    } else if (input.charAt(j) == ')') {
+                        openParens--;
+                        if (openParens == 0) {
+                            if (!hasNestedCommand) {
+                                return new int[] {i, j};
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String format(double micros) {
+        return micros < 10 ? String.format("%.2f", micros) : String.format("%.0f", micros);
+    }
+
+    private static String pad(String text, int width) {
+        StringBuilder padded = new StringBuilder(text);
+        while (padded.length() < width) {
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+}
@@ -0,0 +1,218 @@
+package commandUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the journal and the mapped cache store: the time to open a store
+ * holding the given number of entries, the heap it holds afterwards and the
+ * time of a random lookup. Every open runs in a fresh JVM, so the heap and the
+ * page cache of one run do not carry over to the next. The stores are filled
+ * once, in a temporary directory that is deleted afterwards.
+ *
+ * Run with the application classes and libraries on the classpath:
+ * {@code java -cp <classpath> commandUtils.CacheStoreBench [entries] [runs]}
+ */
+public final class CacheStoreBench {
+    private static final String FILL_ARGUMENT = "--fill";
+    private static final String OPEN_ARGUMENT = "--open";
+    private static final String[] STORES = {"journal", "mapped"};
+    private static final int BATCH_SIZE = 1000;
+    private static final int WARMUP_GETS = 200_000;
+    private static final int GETS = 1_000_000;
+
+    private CacheStoreBench() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(FILL_ARGUMENT)) {
+            fill(args[1], Paths.get(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals(OPEN_ARGUMENT)) {
+            open(args[1], Paths.get(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path directory = Files.createTempDirectory("cache-bench");
+        try {
+            System.out.println(entries + " entries, " + GETS + " random gets after " + WARMUP_GETS
+                + " warm-up gets, " + runs + " fresh JVMs each");
+            System.out.println("store    open (ms)    heap after open (MB)   get (ns)");
+            for (String store : STORES) {
+                Path storeDirectory = Files.createDirectory(directory.resolve(store));
+                run(FILL_ARGUMENT, store, storeDirectory, entries);
+                List<double[]> results = new ArrayList<>();
+                for (int i = 0; i < runs; i++) {
+                    String[] parts = run(OPEN_ARGUMENT, store, storeDirectory, entries).split(" ");
+                    results.add(new double[] {Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                        Double.parseDouble(parts[2])});
+                }
+                report(store, results);
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Write the entries to a new store in batches, as an import does.
+     */
+    private static void fill(String name, Path directory, int entries) throws IOException {
+        CacheStore store = create(name, directory, new ObjectMapper());
+        store.load(directory.resolve("console_cache.json").toFile());
+        Map<String, Object> batch = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            batch.put(key(i), value(i));
+            if (batch.size() == BATCH_SIZE) {
+                store.update(batch, Collections.emptyList());
+                batch.clear();
+            }
+        }
+        store.update(batch, Collections.emptyList());
+        store.flush();
+        if (store instanceof JournalCacheStore) {
+            // Opened from a snapshot, as after a compaction
+            ((JournalCacheStore) store).compact();
+        }
+        store.shutdown();
+        System.out.println("filled");
+        System.exit(0);
+    }
+
+    /**
+     * Open a filled store and print the open time in milliseconds, the heap
+     * growth in MB and the time of a lookup in nanoseconds.
+     */
+    private static void open(String name, Path directory, int entries) {
+        // Created up front like the mapper of the cache, its setup is not part of opening
+        ObjectMapper objectMapper = new ObjectMapper();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        CacheStore store = create(name, directory, objectMapper);
+        store.load(directory.resolve("console_cache.json").toFile());
+        double openMillis = (System.nanoTime() - start) / 1e6;
+        double heapMegabytes = (usedHeap() - heapBefore) / (1024.0 * 1024.0);
+        if (store.size() != entries) {
+            throw new IllegalStateException("Opened " + store.size() + " entries instead of " + entries);
+        }
+
+        Random random = new Random(42);
+        int found = 0;
+        for (int i = 0; i < WARMUP_GETS; i++) {
+            found += store.get(key(random.nextInt(entries))) != null ? 1 : 0;
+        }
+        String[] keys = new String[GETS];
+        for (int i = 0; i < GETS; i++) {
+            keys[i] = key(random.nextInt(entries));
+        }
+        start = System.nanoTime();
+        for (String key : keys) {
+            found += store.get(key) != null ? 1 : 0;
+        }
+        double getNanos = (double) (System.nanoTime() - start) / GETS;
+        if (found != WARMUP_GETS + GETS) {
+            throw new IllegalStateException("Missing entries");
+        }
+        System.out.println(openMillis + " " + heapMegabytes + " " + getNanos);
+        System.exit(0);
+    }
+
+    private static CacheStore create(String name, Path directory, ObjectMapper objectMapper) {
+        Path journal = directory.resolve("console_cache.journal");
+        Path snapshot = directory.resolve("console_cache.snapshot");
+        if (name.equals("mapped")) {
+            return new MappedCacheStore(directory.resolve("console_cache.db"), journal, snapshot, objectMapper,
+                CacheStore.Durability.ASYNC);
+        }
+        return new JournalCacheStore(journal, snapshot, objectMapper, CacheStore.Durability.ASYNC, 1000,
+            BATCH_SIZE, Long.MAX_VALUE);
+    }
+
+    private static String key(int index) {
+        return "bench_entry" + index;
+    }
+
+    private static Object value(int index) {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("name", "entry " + index);
+        value.put("size", index);
+        return value;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String run(String mode, String store, Path directory, int entries)
+            throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            CacheStoreBench.class.getName(), mode, store, directory.toString(), String.valueOf(entries))
+            .redirectErrorStream(true).start();
+        String last = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                last = line;
+            }
+        }
+        if (process.waitFor() != 0 || last == null) {
+            throw new IOException("Benchmark run failed: " + last);
+        }
+        return last;
+    }
+
+    private static void report(String store, List<double[]> results) {
+        System.out.println(pad(store, 9) + pad(range(results, 0, "%.0f"), 13) + pad(range(results, 1, "%+.1f"), 23)
+            + range(results, 2, "%.0f"));
+    }
+
+    private static String range(List<double[]> results, int column, String format) {
+        List<Double> values = new ArrayList<>();
+        for (double[] result : results) {
+            values.add(result[column]);
+        }
+        Collections.sort(values);
+        String min = String.format(format, values.get(0));
+        String max = String.format(format, values.get(values.size() - 1));
+        return min.equals(max) ? min : min + "-" + max;
+    }
+
+    private static String pad(String text, int width) {
+        StringBuilder padded = new StringBuilder(text);
+        while (padded.length() < width) {
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
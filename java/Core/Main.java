@@ -30,6 +30,7 @@ public class Main extends Application {
 
 		primaryStage.setTitle("ConsoleX");
 		primaryStage.setScene(scene);
+		primaryStage.setOnCloseRequest(event -> consoleUI.shutdown());
 		primaryStage.show();
 
 		// Set focus to the input field after showing the window
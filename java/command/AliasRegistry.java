@@ -0,0 +1,310 @@
+package command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import commandUtils.Cache;
+import commandUtils.CacheNamespace;
+
+/**
+ * Shared table of the user aliases, persisted in the "alias" namespace of the {@link Cache}.
+ * Every alias is kept compiled into an {@link AliasTemplate}, so resolving an alias
+ * or listing the aliases neither reads the cache nor tokenizes the alias again.
+ *
+ * The chain of aliases a name leads through (e.g. ll -> l -> ls) is resolved once and
+ * memoized. When an alias changes, only the chains that went through it are dropped.
+ * Aliases that would form a cycle are rejected when they are created.
+ *
+ * The table follows all changes of the namespace, including those made with the
+ * cache command and those made by other ConsoleX processes sharing the cache.
+ */
+public final class AliasRegistry {
+    private static final String NAMESPACE = "alias";
+
+    private final CacheNamespace namespace;
+    private final Map<String, Definition> aliases = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
+    private final CommandParser tokenizer = new CommandParser();
+    // Memoized chains by alias name, guarded by this
+    private final Map<String, Chain> chains = new HashMap<>();
+    // Names of the aliases whose chain went through a name, guarded by this
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+    private long chainBuilds;
+    private long invalidations;
+
+    private AliasRegistry() {
+        namespace = Cache.namespace(NAMESPACE);
+        // Listen first, so that no change is missed while loading
+        namespace.addChangeListener(this::reload);
+        for (Map.Entry<String, Object> entry : namespace.getAll().entrySet()) {
+            aliases.put(entry.getKey(), define(entry.getValue()));
+        }
+        StatsRegistry.register("aliases", this::getStats);
+    }
+
+    /**
+     * Get the shared alias registry, loading the aliases on first call.
+     *
+     * @return The alias registry
+     */
+    public static AliasRegistry getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        private static final AliasRegistry INSTANCE = new AliasRegistry();
+    }
+
+    private Definition define(Object command) {
+        String text = command.toString();
+        return new Definition(text, AliasTemplate.compile(tokenizer.tokenize(text)));
+    }
+
+    /**
+     * Update an alias from the cache after it changed.
+     *
+     * @param name Changed alias, or null if all aliases may have changed
+     */
+    private void reload(String name) {
+        Definition definition = null;
+        Map<String, Definition> all = new HashMap<>();
+        if (name != null) {
+            Object command = namespace.get(name);
+            definition = command != null ? define(command) : null;
+        } else {
+            // Cleared, or replaced by another process
+            for (Map.Entry<String, Object> entry : namespace.getAll().entrySet()) {
+                all.put(entry.getKey(), define(entry.getValue()));
+            }
+        }
+        synchronized (this) {
+            if (name == null) {
+                aliases.clear();
+                aliases.putAll(all);
+                invalidations += chains.size();
+                chains.clear();
+                dependents.clear();
+            } else {
+                if (definition != null) {
+                    aliases.put(name, definition);
+                } else {
+                    aliases.remove(name);
+                }
+                invalidate(name);
+            }
+        }
+        for (Consumer<String> listener : changeListeners) {
+            listener.accept(name);
+        }
+    }
+
+    /**
+     * Drop the memoized chains that went through a name.
+     */
+    private void invalidate(String name) {
+        Set<String> names = dependents.remove(name);
+        if (names == null) {
+            return;
+        }
+        for (String alias : names) {
+            Chain chain = chains.remove(alias);
+            if (chain == null) {
+                continue;
+            }
+            invalidations++;
+            for (String dependency : chain.dependencies) {
+                Set<String> others = dependents.get(dependency);
+                if (others != null) {
+                    others.remove(alias);
+                    if (others.isEmpty()) {
+                        dependents.remove(dependency);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Create or replace an alias.
+     *
+     * @param name Alias name
+     * @param command Command the alias stands for
+     * @throws IllegalArgumentException If resolving the alias would run into a cycle
+     */
+    public void put(String name, String command) {
+        AliasTemplate template = define(command).template;
+        List<String> path = new ArrayList<>();
+        path.add(name);
+        // Follow the command names that do not depend on arguments
+        String head = template.getHead();
+        synchronized (this) {
+            while (head != null && !path.contains(head)) {
+                path.add(head);
+                Definition next = aliases.get(head);
+                head = next != null ? next.template.getHead() : null;
+            }
+        }
+        if (head != null) {
+            path.add(head);
+            throw new IllegalArgumentException("Alias would form a cycle: " + String.join(" -> ", path));
+        }
+        namespace.put(name, command);
+        // Write right away, other windows sharing the cache pick it up from the file
+        Cache.saveCache();
+    }
+
+    /**
+     * Remove an alias.
+     *
+     * @param name Alias name
+     * @return true if the alias was removed, false if it did not exist
+     */
+    public boolean remove(String name) {
+        boolean removed = namespace.remove(name);
+        Cache.saveCache();
+        return removed;
+    }
+
+    /**
+     * Remove all aliases.
+     *
+     * @return Number of removed aliases
+     */
+    public int clear() {
+        int count = namespace.clear();
+        Cache.saveCache();
+        return count;
+    }
+
+    /**
+     * Checks if the string is an alias name.
+     *
+     * @param name Name to check
+     * @return true if it's an existing alias name
+     */
+    public boolean isAlias(String name) {
+        return aliases.containsKey(name);
+    }
+
+    /**
+     * Gets the command corresponding to an alias.
+     *
+     * @param name Alias name
+     * @return Command text of the alias, or null if the alias is not found
+     */
+    public String getCommand(String name) {
+        Definition definition = aliases.get(name);
+        return definition != null ? definition.command : null;
+    }
+
+    /**
+     * Get the memoized chain of templates a name resolves through.
+     *
+     * @param name Command name
+     * @return The chain, or null if the name is not an alias
+     */
+    synchronized Chain resolve(String name) {
+        Chain chain = chains.get(name);
+        if (chain != null || !aliases.containsKey(name)) {
+            return chain;
+        }
+
+        List<AliasTemplate> templates = new ArrayList<>();
+        Set<String> dependencies = new LinkedHashSet<>();
+        String current = name;
+        while (current != null && dependencies.add(current)) {
+            Definition definition = aliases.get(current);
+            if (definition == null || definition.template.isEmpty()) {
+                break;
+            }
+            templates.add(definition.template);
+            current = definition.template.getHead();
+        }
+
+        chain = new Chain(Collections.unmodifiableList(templates), Collections.unmodifiableSet(dependencies));
+        chains.put(name, chain);
+        for (String dependency : dependencies) {
+            dependents.computeIfAbsent(dependency, key -> new HashSet<>()).add(name);
+        }
+        chainBuilds++;
+        return chain;
+    }
+
+    /**
+     * Get the names of all aliases, sorted.
+     */
+    public Set<String> getNames() {
+        return new TreeSet<>(aliases.keySet());
+    }
+
+    /**
+     * Get all aliases with their commands, sorted by name.
+     */
+    public Map<String, String> getAll() {
+        Map<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, Definition> entry : aliases.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().command);
+        }
+        return result;
+    }
+
+    /**
+     * Registers a listener notified when an alias is created, changed or removed,
+     * after the table was updated. The listener receives the alias name, or null
+     * when all aliases may have changed.
+     *
+     * @param listener Listener to notify
+     */
+    public void addChangeListener(Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
+
+    private synchronized String getStats() {
+        return "defined: " + aliases.size() + ", memoized chains: " + chains.size() + ", chain builds: "
+            + chainBuilds + ", invalidations: " + invalidations;
+    }
+
+    private static final class Definition {
+        private final String command;
+        private final AliasTemplate template;
+
+        Definition(String command, AliasTemplate template) {
+            this.command = command;
+            this.template = template;
+        }
+    }
+
+    /**
+     * Templates to apply in order to resolve an alias, and the names looked up
+     * while resolving it. The command name produced by the last template may
+     * depend on the arguments and still be an alias.
+     */
+    static final class Chain {
+        private final List<AliasTemplate> templates;
+        private final Set<String> dependencies;
+
+        Chain(List<AliasTemplate> templates, Set<String> dependencies) {
+            this.templates = templates;
+            this.dependencies = dependencies;
+        }
+
+        List<AliasTemplate> getTemplates() {
+            return templates;
+        }
+
+        Set<String> getDependencies() {
+            return dependencies;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled body of an alias. Every token is split once into literal text and
+ * references to the arguments of the alias: $1, $2, ... (or ${1}) for a single
+ * argument and $@ for all of them. A token that is exactly $@ becomes one word per
+ * argument; elsewhere $@ is replaced by the arguments separated by spaces. A body
+ * without references gets the arguments appended, as if it ended with $@.
+ */
+final class AliasTemplate {
+    static final AliasTemplate EMPTY = new AliasTemplate(Collections.emptyList());
+
+    private static final Pattern PARAMETER = Pattern.compile("\\$(?:(\\d+)|\\{(\\d+)\\}|(@))");
+    // Part of a token standing for all arguments
+    private static final int ALL = 0;
+
+    // Every token is a list of parts; a part is a literal String or the Integer
+    // index of an argument (1 for $1), or ALL
+    private final List<List<Object>> tokens;
+
+    private AliasTemplate(List<List<Object>> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Compile the tokens of an alias body.
+     *
+     * @param words Tokens of the body
+     * @return The template
+     */
+    static AliasTemplate compile(List<String> words) {
+        if (words.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<List<Object>> tokens = new ArrayList<>();
+        boolean referencesArguments = false;
+        for (String word : words) {
+            List<Object> parts = new ArrayList<>();
+            Matcher matcher = PARAMETER.matcher(word);
+            int last = 0;
+            while (matcher.find()) {
+                if (matcher.start() > last) {
+                    parts.add(word.substring(last, matcher.start()));
+                }
+                String index = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+                // $0 is not an argument, keep it as text
+                if (index != null && Integer.parseInt(index) == 0) {
+                    parts.add(matcher.group());
+                } else {
+                    parts.add(index != null ? Integer.parseInt(index) : ALL);
+                    referencesArguments = true;
+                }
+                last = matcher.end();
+            }
+            if (last < word.length()) {
+                parts.add(word.substring(last));
+            }
+            tokens.add(parts);
+        }
+        if (!referencesArguments) {
+            tokens.add(Collections.singletonList(ALL));
+        }
+        return new AliasTemplate(tokens);
+    }
+
+    boolean isEmpty() {
+        return tokens.isEmpty();
+    }
+
+    /**
+     * Get the command name of the body if it does not depend on the arguments.
+     *
+     * @return The first token, or null if it references arguments
+     */
+    String getHead() {
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        List<Object> first = tokens.get(0);
+        return first.size() == 1 && first.get(0) instanceof String ? (String) first.get(0) : null;
+    }
+
+    /**
+     * Expand the body for the given arguments.
+     *
+     * @param args Arguments of the alias
+     * @return Words of the expanded body, starting with the command name
+     */
+    List<Word> apply(List<Word> args) {
+        List<Word> result = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (List<Object> parts : tokens) {
+            // A token that is just a reference keeps the words of the arguments as they are
+            if (parts.size() == 1 && parts.get(0) instanceof Integer) {
+                int index = (Integer) parts.get(0);
+                if (index == ALL) {
+                    result.addAll(args);
+                } else if (index <= args.size()) {
+                    result.add(args.get(index - 1));
+                }
+                continue;
+            }
+
+            text.setLength(0);
+            boolean dynamic = false;
+            for (Object part : parts) {
+                if (part instanceof String) {
+                    text.append((String) part);
+                    continue;
+                }
+                int index = (Integer) part;
+                int from = index == ALL ? 0 : index - 1;
+                int to = index == ALL ? args.size() : Math.min(index, args.size());
+                for (int i = from; i < to; i++) {
+                    if (i > from) {
+                        text.append(' ');
+                    }
+                    text.append(args.get(i).getText());
+                    dynamic |= args.get(i).isDynamic();
+                }
+            }
+            result.add(new Word(text.toString(), dynamic));
+        }
+        return result;
+    }
+
+    /**
+     * A word of a command: either final text, or the source text of a token that
+     * references variables and is bound later.
+     */
+    static final class Word {
+        private final String text;
+        private final boolean dynamic;
+
+        Word(String text, boolean dynamic) {
+            this.text = text;
+            this.dynamic = dynamic;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        boolean isDynamic() {
+            return dynamic;
+        }
+    }
+}
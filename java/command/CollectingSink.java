@@ -0,0 +1,58 @@
+package command;
+
+import java.util.List;
+
+/**
+ * Output sink that collects all output in memory.
+ * Adapts streaming commands to callers that need a single {@link CommandResult},
+ * such as command substitution.
+ */
+public class CollectingSink implements OutputSink {
+    private final StringBuilder output = new StringBuilder();
+    
+    /**
+     * Execute a command and collect its streamed output into one result.
+     * 
+     * @param command Command to execute
+     * @param args Command arguments
+     * @return Result containing the complete output
+     */
+    public static CommandResult execute(Command command, List<String> args) {
+        CollectingSink sink = new CollectingSink();
+        return sink.toResult(command.execute(args, sink));
+    }
+    
+    @Override
+    public void write(String text) {
+        output.append(text);
+    }
+    
+    @Override
+    public void writeError(String text) {
+        output.append(text);
+    }
+    
+    /**
+     * Combine the collected output with the final result of the command.
+     * 
+     * @param result Result returned by the command, may be null
+     * @return Result containing the collected output followed by the result output
+     */
+    public CommandResult toResult(CommandResult result) {
+        if (output.length() == 0) {
+            return result;
+        }
+        
+        // Drop the trailing line break, the console adds its own
+        int length = output.length();
+        if (output.charAt(length - 1) == '\n') {
+            output.setLength(length - 1);
+        }
+        
+        boolean error = result != null && result.isError();
+        if (result != null && result.hasOutput()) {
+            output.append("\n").append(result.getOutput());
+        }
+        return new CommandResult(error, output.toString());
+    }
+}
@@ -15,6 +15,45 @@ public interface Command {
      */
     CommandResult execute(List<String> args);
     
+    /**
+     * Execute the command, streaming its output to the given sink.
+     * Commands that can produce large output override this method and write
+     * their output in chunks. The default implementation runs
+     * {@link #execute(List)} and returns its result unchanged.
+     * 
+     * @param args Command arguments
+     * @param sink Sink receiving the output as it is produced
+     * @return Final result of the command execution; its output is shown after the streamed output
+     */
+    default CommandResult execute(List<String> args, OutputSink sink) {
+        return execute(args);
+    }
+    
+    /**
+     * Execute the command with input from the previous stage of a pipeline.
+     * Commands that read input override this method. The default implementation
+     * ignores the input and runs {@link #execute(List, OutputSink)}.
+     * 
+     * @param args Command arguments
+     * @param input Input of the command, or null if the command is not part of a pipeline
+     * @param sink Sink receiving the output as it is produced
+     * @return Final result of the command execution
+     */
+    default CommandResult execute(List<String> args, CommandInput input, OutputSink sink) {
+        return execute(args, sink);
+    }
+    
+    /**
+     * Check whether running the command with the given arguments changes the
+     * current working directory. Such commands cannot run in parallel with others.
+     * 
+     * @param args Command arguments
+     * @return true if the command changes the working directory
+     */
+    default boolean changesWorkingDirectory(List<String> args) {
+        return false;
+    }
+    
     /**
      * Get the name of the command.
      * This is the primary identifier used to invoke the command.
@@ -0,0 +1,282 @@
+package command;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import ui.ConsoleUI;
+
+/**
+ * Runs command lines on a background worker so the JavaFX application thread
+ * stays responsive. Results are delivered back on the FX thread through
+ * {@link Platform#runLater(Runnable)}, and running commands can be interrupted.
+ */
+public class CommandEngine {
+    private static final int CHUNK_SIZE = 8192;
+    private static final int MAX_PENDING_CHUNKS = 32;
+
+    private final PipelineExecutor pipelineExecutor;
+    private final ParallelExecutor parallelExecutor;
+    private final CommandParser commandParser;
+    private final ConsoleUI consoleUI;
+    // Commands share static state (variables, current directory), so lines run one at a time
+    private final ExecutorService worker;
+    private final Set<Task> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    // Limits output chunks waiting for the FX thread, blocking commands that outrun the display
+    private final Semaphore pendingChunks = new Semaphore(MAX_PENDING_CHUNKS);
+    private Consumer<Boolean> busyListener;
+
+    /**
+     * Listener for the outcome of a submitted command line.
+     * All methods are called on the JavaFX application thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each chunk of output streamed by a running command.
+         *
+         * @param text Output text
+         * @param error Whether the text is error output
+         */
+        void onOutput(String text, boolean error);
+
+        /**
+         * Called for each command of the line after it has been executed.
+         *
+         * @param command The executed command
+         * @param result Final result of the command, shown after its streamed output
+         */
+        void onResult(ParsedCommand command, CommandResult result);
+
+        /**
+         * Called when the line could not be executed.
+         *
+         * @param error The error that stopped execution
+         */
+        void onError(Exception error);
+    }
+
+    /**
+     * Create an engine executing commands with the given executor and parser.
+     *
+     * @param commandExecutor Executor used to run parsed commands
+     * @param commandParser Parser used to parse command input
+     * @param consoleUI Console UI passed to commands that need UI access
+     */
+    public CommandEngine(CommandExecutor commandExecutor, CommandParser commandParser, ConsoleUI consoleUI) {
+        this.pipelineExecutor = new PipelineExecutor(commandExecutor);
+        this.parallelExecutor = new ParallelExecutor(commandExecutor);
+        this.commandParser = commandParser;
+        this.consoleUI = consoleUI;
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "command-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Set the listener notified when the engine becomes busy or idle.
+     * The listener is called on the JavaFX application thread.
+     *
+     * @param busyListener Listener receiving the busy state
+     */
+    public void setBusyListener(Consumer<Boolean> busyListener) {
+        this.busyListener = busyListener;
+    }
+
+    /**
+     * Submit a command line for execution. Lines are executed in submission order.
+     *
+     * @param input Command line, commands separated by semicolons, commands to run in
+     *        parallel by '&' and stages of pipelines by '|'
+     * @param listener Listener receiving the results
+     */
+    public void submit(String input, Listener listener) {
+        if (activeCount.getAndIncrement() == 0) {
+            notifyBusy(true);
+        }
+
+        Task task = new Task(input, listener);
+        pending.add(task);
+        task.future = worker.submit(task);
+    }
+
+    /**
+     * Interrupt the running command and discard queued lines.
+     *
+     * @return true if anything was cancelled
+     */
+    public boolean cancel() {
+        boolean cancelled = false;
+        for (Task task : pending) {
+            Future<?> future = task.future;
+            if (future != null && future.cancel(true)) {
+                cancelled = true;
+                // Queued tasks never run, and the UI should not wait for a running one to unwind
+                task.release();
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Check whether a command line is running or queued.
+     *
+     * @return true if the engine is busy
+     */
+    public boolean isBusy() {
+        return activeCount.get() > 0;
+    }
+
+    /**
+     * Stop the worker thread, interrupting the running command.
+     */
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private void runLine(String input, Listener listener) {
+        try {
+            // Split input by semicolons to handle multiple commands
+            for (String command : commandParser.splitCommands(input)) {
+                // Remaining commands of an interrupted line are skipped
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                // Parse and execute the command, pipeline or parallel group, streaming its output
+                List<List<ParsedCommand>> group = commandParser.parseParallel(command);
+                if (group.size() == 1) {
+                    List<ParsedCommand> stages = group.get(0);
+                    ParsedCommand parsedCommand = stages.get(stages.size() - 1);
+                    ConsoleSink sink = new ConsoleSink(listener);
+                    CommandResult result;
+                    try {
+                        result = pipelineExecutor.execute(stages, consoleUI, sink);
+                    } finally {
+                        sink.flush();
+                    }
+                    Platform.runLater(() -> listener.onResult(parsedCommand, result));
+                } else if (group.size() > 1) {
+                    ConsoleSink sink = new ConsoleSink(listener);
+                    try {
+                        parallelExecutor.execute(group, consoleUI, sink, (parsedCommand, result) -> {
+                            // Show the result right after the output of its command
+                            sink.flush();
+                            Platform.runLater(() -> listener.onResult(parsedCommand, result));
+                        });
+                    } finally {
+                        sink.flush();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Platform.runLater(() -> listener.onError(e));
+        }
+    }
+
+    /**
+     * A submitted command line. Releases its busy slot exactly once,
+     * whether it completes, fails or is cancelled.
+     */
+    private final class Task implements Runnable {
+        private final String input;
+        private final Listener listener;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile Future<?> future;
+
+        Task(String input, Listener listener) {
+            this.input = input;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            try {
+                runLine(input, listener);
+            } finally {
+                release();
+            }
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                pending.remove(this);
+                if (activeCount.decrementAndGet() == 0) {
+                    notifyBusy(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sink that groups streamed output into chunks and hands them to the FX thread.
+     * Blocks the command while too many chunks are waiting to be displayed.
+     */
+    private final class ConsoleSink implements OutputSink {
+        private final Listener listener;
+        private final StringBuilder buffer = new StringBuilder();
+
+        ConsoleSink(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void write(String text) {
+            buffer.append(text);
+            if (buffer.length() >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        @Override
+        public void writeError(String text) {
+            // Keep regular and error output in order
+            flush();
+            emit(text, true);
+        }
+
+        void flush() {
+            if (buffer.length() > 0) {
+                String chunk = buffer.toString();
+                buffer.setLength(0);
+                emit(chunk, false);
+            }
+        }
+
+        private void emit(String chunk, boolean error) {
+            try {
+                pendingChunks.acquire();
+            } catch (InterruptedException e) {
+                // Cancelled while waiting for the display, drop the chunk
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            Platform.runLater(() -> {
+                try {
+                    listener.onOutput(chunk, error);
+                } finally {
+                    pendingChunks.release();
+                }
+            });
+        }
+    }
+
+    private void notifyBusy(boolean busy) {
+        Consumer<Boolean> listener = busyListener;
+        if (listener != null) {
+            Platform.runLater(() -> listener.accept(busy));
+        }
+    }
+}
@@ -1,75 +1,20 @@
 package command;
-import java.lang.reflect.Modifier;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
-
-import org.reflections.Reflections;
 
 import ui.ConsoleUI;
 
 /**
- * Responsible for discovering and executing commands.
- * Uses reflection to find command implementations.
+ * Responsible for executing commands.
+ * Commands are looked up in the shared {@link CommandRegistry}.
  */
 public class CommandExecutor {
-    private final Map<String, Command> commandMap = new HashMap<>();
+    private final CommandRegistry registry;
     
     /**
-     * Constructor that discovers all command implementations
-     * and registers them along with their aliases.
+     * Constructor that uses the shared command registry.
      */
     public CommandExecutor() {
-        discoverCommands();
-    }
-    
-    /**
-     * Use reflection to find all classes that implement the Command interface
-     * and register them along with their aliases.
-     */
-    private void discoverCommands() {
-        try {
-            Reflections reflections = new Reflections("command.impl");
-            Set<Class<? extends Command>> commandClasses = reflections.getSubTypesOf(Command.class);
-            
-            for (Class<? extends Command> commandClass : commandClasses) {
-                // Skip abstract classes and interfaces
-                if (Modifier.isAbstract(commandClass.getModifiers()) || 
-                    commandClass.isInterface()) {
-                    continue;
-                }
-                
-                // Create instance of the command
-                Command command = commandClass.getDeclaredConstructor().newInstance();
-                
-                // Register the command with its primary name
-                commandMap.put(command.getName().toLowerCase(), command);
-                
-                // Register command aliases if present
-                if (commandClass.isAnnotationPresent(CommandAlias.class)) {
-                    CommandAlias aliases = commandClass.getAnnotation(CommandAlias.class);
-                    for (String alias : aliases.value()) {
-                        commandMap.put(alias.toLowerCase(), command);
-                    }
-                }
-            }
-            
-            // Special initialization for RunScriptCommand
-            Command scriptCommand = getCommand("script");
-            if (scriptCommand != null) {
-                try {
-                    scriptCommand.getClass().getMethod("setCommandExecutor", CommandExecutor.class)
-                        .invoke(scriptCommand, this);
-                    System.out.println("Script successfully initialized");
-                } catch (Exception e) {
-                    System.err.println("Script: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error discovering commands: " + e.getMessage());
-            e.printStackTrace();
-        }
+        this.registry = CommandRegistry.getInstance();
     }
     
     /**
@@ -79,7 +24,7 @@ public class CommandExecutor {
      * @return Command instance or null if not found
      */
     public Command getCommand(String name) {
-        return commandMap.get(name.toLowerCase());
+        return registry.getCommand(name);
     }
     
     /**
@@ -88,17 +33,44 @@ public class CommandExecutor {
      * @return Map of command names to Command instances
      */
     public Map<String, Command> getCommands() {
-        return new HashMap<>(commandMap);
+        return registry.getCommands();
     }
     
     /**
-     * Execute a parsed command.
+     * Execute a parsed command and collect its complete output.
      * 
      * @param parsedCommand The parsed command to execute
      * @param consoleUI Reference to the console UI for commands that need UI access
      * @return Result of the command execution
      */
     public CommandResult execute(ParsedCommand parsedCommand, ConsoleUI consoleUI) {
+        CollectingSink sink = new CollectingSink();
+        return sink.toResult(execute(parsedCommand, consoleUI, sink));
+    }
+    
+    /**
+     * Execute a parsed command, streaming its output to the given sink.
+     * 
+     * @param parsedCommand The parsed command to execute
+     * @param consoleUI Reference to the console UI for commands that need UI access
+     * @param sink Sink receiving the output as it is produced
+     * @return Final result of the command execution
+     */
+    public CommandResult execute(ParsedCommand parsedCommand, ConsoleUI consoleUI, OutputSink sink) {
+        return execute(parsedCommand, consoleUI, null, sink);
+    }
+    
+    /**
+     * Execute a parsed command reading the given input, streaming its output to the given sink.
+     * 
+     * @param parsedCommand The parsed command to execute
+     * @param consoleUI Reference to the console UI for commands that need UI access
+     * @param input Input of the command, or null if there is none
+     * @param sink Sink receiving the output as it is produced
+     * @return Final result of the command execution
+     */
+    public CommandResult execute(ParsedCommand parsedCommand, ConsoleUI consoleUI, CommandInput input,
+            OutputSink sink) {
         String commandName = parsedCommand.getCommandName();
         Command command = getCommand(commandName);
         
@@ -111,6 +83,6 @@ public class CommandExecutor {
             consoleUI.clearOutput();
         }
         
-        return command.execute(parsedCommand.getArgs());
+        return command.execute(parsedCommand.getArgs(), input, sink);
     }
 }
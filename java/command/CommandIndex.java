@@ -0,0 +1,37 @@
+package command;
+
+import java.util.function.Supplier;
+
+/**
+ * Build-time index of command implementations.
+ * The implementation is generated by {@code command.processor.CommandIndexProcessor}
+ * so commands can be registered without scanning the classpath at startup.
+ */
+public interface CommandIndex {
+
+    /**
+     * Fully qualified name of the generated index class.
+     */
+    String GENERATED_CLASS = "command.GeneratedCommandIndex";
+
+    /**
+     * Register every indexed command with the given registrar.
+     *
+     * @param registrar Receiver of the indexed commands
+     */
+    void register(Registrar registrar);
+
+    /**
+     * Receives the commands listed in the index.
+     */
+    interface Registrar {
+
+        /**
+         * Register a command factory under the aliases declared by {@link CommandAlias}.
+         *
+         * @param aliases Aliases of the command (may be empty)
+         * @param factory Factory creating the command instance on first use
+         */
+        void register(String[] aliases, Supplier<Command> factory);
+    }
+}
@@ -0,0 +1,15 @@
+package command;
+
+/**
+ * Input of a command, such as the output of the previous stage of a pipeline.
+ */
+public interface CommandInput {
+    
+    /**
+     * Read the next line of input, waiting until it is available.
+     * 
+     * @return The next line without line separator, or null at the end of input
+     *         or when the reading thread is interrupted
+     */
+    String readLine();
+}
@@ -1,9 +1,13 @@
 package command;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import command.impl.Alias;
+import command.AliasTemplate.Word;
 import commandUtils.VariableManager;
 
 /**
@@ -11,6 +15,8 @@ import commandUtils.VariableManager;
  * Handles nested commands and argument parsing with unlimited nesting.
  */
 public class CommandParser {
+    private static final Pattern PARALLEL_BLOCK = Pattern.compile("^parallel\\s*\\{(.*)\\}$", Pattern.DOTALL);
+    
     private CommandExecutor commandExecutor;
     
     // Flag to prevent stack overflow during command substitution
@@ -35,6 +41,8 @@ public class CommandParser {
     
     /**
      * Parse a command string into a ParsedCommand object.
+     * Tokenizing and alias resolution are cached per command text (after command
+     * substitution); only variables are bound again on every call.
      * 
      * @param input Command string to parse
      * @return ParsedCommand object or null if input is empty
@@ -54,159 +62,349 @@ public class CommandParser {
             }
         }
         
-        // Then process variable substitution
-        input = VariableManager.processVariables(input);
+        // Then look up or build the template and bind the variables
+        ParseCache parseCache = ParseCache.getInstance();
+        CommandTemplate template = parseCache.get(input);
+        if (template == null) {
+            long version = parseCache.getVersion();
+            template = compile(input);
+            parseCache.put(input, template, version);
+        }
         
-        // Tokenize the expanded input
-        List<String> tokens = tokenize(input);
+        return bind(template);
+    }
+    
+    /**
+     * Tokenize a command and resolve its alias, leaving tokens that reference
+     * variables unbound.
+     * 
+     * @param input Command text after command substitution
+     * @return Template of the command
+     */
+    private CommandTemplate compile(String input) {
+        List<String> sources = new ArrayList<>();
+        List<String> tokens = tokenize(input, sources);
         
         if (tokens.isEmpty()) {
-            return null;
+            return CommandTemplate.EMPTY;
         }
         
-        String commandName = tokens.get(0);
-        List<String> args = tokens.size() > 1 ? tokens.subList(1, tokens.size()) : new ArrayList<>();
+        Set<String> aliasDependencies = new HashSet<>();
+        String commandName = null;
+        // A literal command name is resolved once, a name from a variable on every bind
+        boolean literalName = !VariableManager.containsVariables(sources.get(0));
+        
+        List<Word> words = new ArrayList<>();
+        for (int i = literalName ? 1 : 0; i < tokens.size(); i++) {
+            boolean tokenIsDynamic = VariableManager.containsVariables(sources.get(i));
+            words.add(new Word(tokenIsDynamic ? sources.get(i) : tokens.get(i), tokenIsDynamic));
+        }
         
-        // Check if this is an alias and resolve it if needed
-        if (Alias.isAlias(commandName)) {
-            return resolveAlias(commandName, args);
+        if (literalName) {
+            words = resolveAlias(tokens.get(0), words, aliasDependencies);
+            // An alias may take its command name from an argument referencing variables
+            if (!words.get(0).isDynamic()) {
+                commandName = words.get(0).getText();
+                words = words.subList(1, words.size());
+            }
         }
         
-        return new ParsedCommand(commandName, args);
+        List<String> templateTokens = new ArrayList<>();
+        boolean[] dynamicFlags = new boolean[words.size()];
+        for (int i = 0; i < dynamicFlags.length; i++) {
+            templateTokens.add(words.get(i).getText());
+            dynamicFlags[i] = words.get(i).isDynamic();
+        }
+        return new CommandTemplate(commandName, templateTokens, dynamicFlags, aliasDependencies);
     }
     
     /**
-     * Resolve an alias to its actual command.
+     * Bind the variables of a template.
+     * A token referencing variables is expanded and tokenized again, so a
+     * variable holding several words still becomes several arguments.
      * 
-     * @param aliasName The name of the alias
-     * @param originalArgs Arguments that were provided to the alias
-     * @return ParsedCommand object for the resolved command
+     * @param template Template to bind
+     * @return Parsed command or null if the template is empty
      */
-    private ParsedCommand resolveAlias(String aliasName, List<String> originalArgs) {
-        String aliasCommand = Alias.getAliasCommand(aliasName);
+    private ParsedCommand bind(CommandTemplate template) {
+        if (template.isEmpty()) {
+            return null;
+        }
         
-        if (aliasCommand == null) {
-            // This shouldn't happen if isAlias returned true, but just in case
-            return new ParsedCommand(aliasName, originalArgs);
+        List<String> staticArgs = template.getStaticArgs();
+        if (staticArgs != null) {
+            return new ParsedCommand(template.getCommandName(), staticArgs);
         }
         
-        // Parse the alias command
-        List<String> aliasTokens = tokenize(aliasCommand);
-        if (aliasTokens.isEmpty()) {
-            // Empty alias, return original
-            return new ParsedCommand(aliasName, originalArgs);
+        List<String> templateTokens = template.getTokens();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < templateTokens.size(); i++) {
+            if (template.isDynamic(i)) {
+                tokens.addAll(tokenize(VariableManager.processVariables(templateTokens.get(i))));
+            } else {
+                tokens.add(templateTokens.get(i));
+            }
         }
         
-        // Get the actual command name
-        String actualCommandName = aliasTokens.get(0);
+        if (template.getCommandName() != null) {
+            return new ParsedCommand(template.getCommandName(), tokens);
+        }
         
-        // Combine alias arguments with the original arguments
-        List<String> combinedArgs = new ArrayList<>();
-        if (aliasTokens.size() > 1) {
-            combinedArgs.addAll(aliasTokens.subList(1, aliasTokens.size()));
+        if (tokens.isEmpty()) {
+            return null;
         }
-        combinedArgs.addAll(originalArgs);
         
-        // Check if the resolved command is itself an alias (prevent infinite loops)
-        if (Alias.isAlias(actualCommandName) && !actualCommandName.equals(aliasName)) {
-            // Only recurse if it's a different alias to prevent infinite loops
-            return resolveAlias(actualCommandName, combinedArgs);
+        List<Word> words = new ArrayList<>();
+        for (String token : tokens.subList(1, tokens.size())) {
+            words.add(new Word(token, false));
+        }
+        List<Word> resolved = resolveAlias(tokens.get(0), words, new HashSet<>());
+        List<String> args = new ArrayList<>();
+        for (Word word : resolved.subList(1, resolved.size())) {
+            args.add(word.getText());
+        }
+        return new ParsedCommand(resolved.get(0).getText(), args);
+    }
+    
+    /**
+     * Split a command line into the commands separated by semicolons.
+     * Semicolons inside quotes or command substitutions are not separators.
+     * 
+     * @param input Command line to split
+     * @return List of non-empty commands
+     */
+    public List<String> splitCommands(String input) {
+        return splitOutsideQuotes(input, ';');
+    }
+    
+    /**
+     * Parse a command that may be a pipeline of commands separated by '|'.
+     * Pipe characters inside quotes or command substitutions are not operators.
+     * 
+     * @param input Command string to parse
+     * @return Parsed stages of the pipeline, empty if the input is empty
+     */
+    public List<ParsedCommand> parsePipeline(String input) {
+        List<ParsedCommand> stages = new ArrayList<>();
+        if (input == null) {
+            return stages;
         }
         
-        return new ParsedCommand(actualCommandName, combinedArgs);
+        for (String stage : splitOutsideQuotes(input, '|')) {
+            ParsedCommand parsedCommand = parse(stage);
+            if (parsedCommand != null) {
+                stages.add(parsedCommand);
+            }
+        }
+        return stages;
     }
     
     /**
-     * Find the innermost command substitution in a string.
+     * Parse a command that may be a group of commands to run in parallel,
+     * written as {@code cmd1 & cmd2 & cmd3} or {@code parallel { cmd1; cmd2; cmd3 }}.
+     * A '&' only separates commands as a word of its own, so arguments such as
+     * {@code https://host/?x=1&y=2} are kept whole. Every command of the group may
+     * be a pipeline. Command substitutions and variables are expanded while parsing,
+     * before any command of the group runs.
      * 
-     * @param input The string to search
-     * @return int[] with {startIndex, endIndex} or null if none found
+     * @param input Command string to parse
+     * @return Parsed pipelines of the group in order; a single element if the input is not a group
+     * @throws IllegalArgumentException If the input contains {@code &&}, which is not supported
      */
-    private int[] findInnermostSubstitution(String input) {
-        // This method finds a $(command) expression with no nested $( inside it
-        for (int i = 0; i < input.length() - 1; i++) {
-            if (input.charAt(i) == '$' && i + 1 < input.length() && input.charAt(i + 1) == '(') {
-                int startPos = i;
-                int openParens = 1;
-                boolean hasNestedCommand = false;
-                
-                for (int j = i + 2; j < input.length(); j++) {
-                    if (input.charAt(j) == '$' && j + 1 < input.length() && input.charAt(j + 1) == '(') {
-                        openParens++;
-                        hasNestedCommand = true;
-                    } else if (input.charAt(j) == ')') {
-                        openParens--;
-                        if (openParens == 0) {
-                            // Found a complete command
-                            if (!hasNestedCommand) {
-                                // This is an innermost command without nested commands
-                                return new int[] { startPos, j };
-                            } else {
-                                // This has nested commands, keep searching
-                                break;
-                            }
-                        }
-                    }
+    public List<List<ParsedCommand>> parseParallel(String input) {
+        List<List<ParsedCommand>> group = new ArrayList<>();
+        if (input == null) {
+            return group;
+        }
+        
+        List<String> commands;
+        Matcher block = PARALLEL_BLOCK.matcher(input.trim());
+        if (block.matches()) {
+            commands = new ArrayList<>();
+            for (String command : splitOutsideQuotes(block.group(1), ';')) {
+                commands.addAll(splitOutsideQuotes(command, '&'));
+            }
+        } else {
+            commands = splitOutsideQuotes(input, '&');
+        }
+        
+        for (String command : commands) {
+            List<ParsedCommand> stages = parsePipeline(command);
+            if (!stages.isEmpty()) {
+                group.add(stages);
+            }
+        }
+        return group;
+    }
+    
+    /**
+     * Split input at a separator character that is not quoted, escaped,
+     * inside a $(...) command substitution or inside braces. An escaped
+     * separator at the same level is unescaped, so {@code \|} passes a literal '|'.
+     * 
+     * @param input Input to split
+     * @param separator Separator character
+     * @return List of trimmed, non-empty parts
+     */
+    private List<String> splitOutsideQuotes(String input, char separator) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        char quoteChar = 0;
+        int substitutionDepth = 0;
+        int braceDepth = 0;
+        
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            
+            // Keep escaped characters as they are, the tokenizer handles them later;
+            // nested input is split again later, so only separators at this level lose the escape
+            if (c == '\\' && i + 1 < input.length()) {
+                char escaped = input.charAt(++i);
+                if (escaped != separator || quoteChar != 0 || substitutionDepth > 0 || braceDepth > 0) {
+                    current.append(c);
+                }
+                current.append(escaped);
+                continue;
+            }
+            
+            if (quoteChar != 0) {
+                if (c == quoteChar) {
+                    quoteChar = 0;
                 }
+            } else if (c == '"' || c == '\'') {
+                quoteChar = c;
+            } else if (c == '$' && i + 1 < input.length() && input.charAt(i + 1) == '(') {
+                substitutionDepth++;
+                current.append(c).append(input.charAt(++i));
+                continue;
+            } else if (c == ')' && substitutionDepth > 0) {
+                substitutionDepth--;
+            } else if (c == '{') {
+                braceDepth++;
+            } else if (c == '}' && braceDepth > 0) {
+                braceDepth--;
+            } else if (c == separator && substitutionDepth == 0 && braceDepth == 0
+                    && splitsAt(input, i, separator)) {
+                addPart(parts, current);
+                continue;
             }
+            
+            current.append(c);
+        }
+        
+        addPart(parts, current);
+        return parts;
+    }
+    
+    /**
+     * Check whether a separator outside quotes and groups splits the input.
+     * Only a '&' standing as a word of its own separates parallel commands.
+     */
+    private boolean splitsAt(String input, int index, char separator) {
+        if (separator != '&') {
+            return true;
+        }
+        boolean wordStart = index == 0 || Character.isWhitespace(input.charAt(index - 1));
+        if (wordStart && index + 1 < input.length() && input.charAt(index + 1) == '&'
+                && (index + 2 == input.length() || Character.isWhitespace(input.charAt(index + 2)))) {
+            // Would run both commands in parallel instead of the second after the first
+            throw new IllegalArgumentException("'&&' is not supported, use ';' to run commands one after another");
+        }
+        return wordStart && (index + 1 == input.length() || Character.isWhitespace(input.charAt(index + 1)));
+    }
+    
+    private void addPart(List<String> parts, StringBuilder current) {
+        String part = current.toString().trim();
+        if (!part.isEmpty()) {
+            parts.add(part);
         }
-        return null;
+        current.setLength(0);
+    }
+    
+    /**
+     * Resolve a command name that may be an alias, following aliases of aliases.
+     * 
+     * @param name Command name or alias
+     * @param args Arguments of the command
+     * @param lookedUp Receives every name that was looked up as an alias
+     * @return The actual command name followed by its arguments
+     */
+    private List<Word> resolveAlias(String name, List<Word> args, Set<String> lookedUp) {
+        AliasRegistry aliases = AliasRegistry.getInstance();
+        String current = name;
+        lookedUp.add(current);
+        
+        while (true) {
+            AliasRegistry.Chain chain = aliases.resolve(current);
+            if (chain == null || chain.getTemplates().isEmpty()) {
+                // Not an alias or an empty alias, keep the name
+                break;
+            }
+            lookedUp.addAll(chain.getDependencies());
+            
+            for (AliasTemplate template : chain.getTemplates()) {
+                List<Word> words = template.apply(args);
+                if (words.isEmpty()) {
+                    // The command name was an argument that is missing
+                    break;
+                }
+                current = words.get(0).getText();
+                args = words.subList(1, words.size());
+                if (words.get(0).isDynamic()) {
+                    return words;
+                }
+            }
+            
+            // Only a command name taken from the arguments can still be an alias;
+            // stop at a name seen before (prevent infinite loops)
+            if (!lookedUp.add(current)) {
+                break;
+            }
+        }
+        
+        List<Word> resolved = new ArrayList<>();
+        resolved.add(new Word(current, false));
+        resolved.addAll(args);
+        return resolved;
     }
     
     /**
      * Expands all command substitutions in the format $(command) with unlimited nesting depth.
+     * The input is parsed once and the substitutions are evaluated bottom-up.
      * 
      * @param input Input string with potential command substitutions
      * @return String with all command substitutions expanded
      */
     private String expandCommandSubstitutions(String input) {
-        if (commandExecutor == null || input == null || input.isEmpty()) {
+        if (commandExecutor == null || !SubstitutionParser.containsSubstitution(input)) {
             return input;
         }
         
-        StringBuilder result = new StringBuilder(input);
-        boolean foundSubstitution;
+        return SubstitutionParser.expand(input, this::executeSubstitution);
+    }
+    
+    /**
+     * Execute the command of a substitution and get its output.
+     * The command text is already expanded, so it is parsed without substitution.
+     * 
+     * @param cmdContent Command, which may be a pipeline
+     * @return Output of the command, prefixed with "ERROR: " if it failed
+     */
+    private String executeSubstitution(String cmdContent) {
+        List<ParsedCommand> stages = parsePipeline(cmdContent);
+        if (stages.isEmpty()) {
+            return "";
+        }
         
-        do {
-            foundSubstitution = false;
-            
-            // Find any innermost command substitution
-            int[] indices = findInnermostSubstitution(result.toString());
-            
-            if (indices != null) {
-                int startIndex = indices[0];
-                int endIndex = indices[1];
-                
-                // Extract the command without the $( and )
-                String cmdContent = result.substring(startIndex + 2, endIndex);
-                
-                // Create temporary command parser to avoid stack overflow
-                CommandParser tempParser = new CommandParser();
-                tempParser.setCommandExecutor(commandExecutor);
-                
-                // Parse and execute the command
-                ParsedCommand command = tempParser.parse(cmdContent);
-                String output = "";
-                
-                if (command != null) {
-                    CommandResult cmdResult = commandExecutor.execute(command, null);
-                    if (cmdResult != null) {
-                        output = cmdResult.getOutput();
-                        
-                        // If there was an error, indicate it
-                        if (cmdResult.isError()) {
-                            output = "ERROR: " + output;
-                        }
-                    }
-                }
-                
-                // Replace the command substitution with its output
-                result.replace(startIndex, endIndex + 1, output);
-                foundSubstitution = true;
-            }
-        } while (foundSubstitution);
+        CollectingSink sink = new CollectingSink();
+        CommandResult cmdResult = sink.toResult(
+            new PipelineExecutor(commandExecutor).execute(stages, null, sink));
+        if (cmdResult == null || cmdResult.getOutput() == null) {
+            return "";
+        }
         
-        return result.toString();
+        // If there was an error, indicate it
+        return cmdResult.isError() ? "ERROR: " + cmdResult.getOutput() : cmdResult.getOutput();
     }
     
     /**
@@ -216,18 +414,36 @@ public class CommandParser {
      * @return List of tokens
      */
     public List<String> tokenize(String input) {
+        return tokenize(input, null);
+    }
+    
+    /**
+     * Tokenize a command string, optionally collecting the source text of every token.
+     * 
+     * @param input Command string to tokenize
+     * @param sources Receives the unprocessed text of each token (with quotes and escapes), or null
+     * @return List of tokens
+     */
+    private List<String> tokenize(String input, List<String> sources) {
         List<String> tokens = new ArrayList<>();
         StringBuilder currentToken = new StringBuilder();
         boolean inQuotes = false;
         char quoteChar = 0;
+        int tokenStart = -1;
         
         for (int i = 0; i < input.length(); i++) {
             char c = input.charAt(i);
             
+            if (tokenStart < 0 && (c != ' ' || inQuotes)) {
+                tokenStart = i;
+            }
+            
             // Handle escape character
             if (c == '\\' && i + 1 < input.length()) {
                 char nextChar = input.charAt(i + 1);
-                if (nextChar == '"' || nextChar == '\'' || nextChar == '\\' || nextChar == ' ') {
+                // \$( is a literal "$(", not a command substitution
+                boolean literalSubstitution = nextChar == '$' && i + 2 < input.length() && input.charAt(i + 2) == '(';
+                if (nextChar == '"' || nextChar == '\'' || nextChar == '\\' || nextChar == ' ' || literalSubstitution) {
                     currentToken.append(nextChar);
                     i++; // Skip the escaped character
                     continue;
@@ -255,9 +471,9 @@ public class CommandParser {
             // Handle spaces (token separators)
             if (c == ' ' && !inQuotes) {
                 if (currentToken.length() > 0) {
-                    tokens.add(currentToken.toString());
-                    currentToken.setLength(0);
+                    addToken(tokens, currentToken, sources, input, tokenStart, i);
                 }
+                tokenStart = -1;
                 continue;
             }
             
@@ -267,9 +483,18 @@ public class CommandParser {
         
         // Add the last token if any
         if (currentToken.length() > 0) {
-            tokens.add(currentToken.toString());
+            addToken(tokens, currentToken, sources, input, tokenStart, input.length());
         }
         
         return tokens;
     }
+    
+    private void addToken(List<String> tokens, StringBuilder currentToken, List<String> sources, String input,
+            int start, int end) {
+        tokens.add(currentToken.toString());
+        currentToken.setLength(0);
+        if (sources != null) {
+            sources.add(input.substring(start, end));
+        }
+    }
 }
@@ -0,0 +1,387 @@
+package command;
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import org.reflections.Reflections;
+import org.reflections.util.ConfigurationBuilder;
+
+/**
+ * Shared, immutable registry of all available commands.
+ * Commands are registered once per application from the build-time {@link CommandIndex}
+ * and created on first use. Reflection scanning is only used when the index is missing
+ * and for plugin jars.
+ */
+public final class CommandRegistry {
+    private static final String PLUGIN_DIRECTORY = "plugins";
+    // Set -Dconsolex.commandIndex=scan to force the classpath scan, or =index to keep the index;
+    // either way the time taken to register the commands is printed (see bench/ to compare both)
+    private static final String DISCOVERY_PROPERTY = "consolex.commandIndex";
+
+    private final Map<String, CommandEntry> commandMap;
+    private volatile HelpIndex helpIndex;
+
+    private CommandRegistry() {
+        Map<String, CommandEntry> commands = new HashMap<>();
+        discoverCommands(commands);
+        this.commandMap = Collections.unmodifiableMap(commands);
+    }
+
+    /**
+     * Get the shared registry instance, discovering the commands on first call.
+     *
+     * @return The command registry
+     */
+    public static CommandRegistry getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        private static final CommandRegistry INSTANCE = new CommandRegistry();
+    }
+
+    /**
+     * Register commands from the generated index, falling back to a reflection
+     * scan of the command.impl package, then load commands from plugin jars.
+     */
+    private static void discoverCommands(Map<String, CommandEntry> commands) {
+        long start = System.nanoTime();
+        String discovery = System.getProperty(DISCOVERY_PROPERTY);
+        boolean indexed = !"scan".equals(discovery) && loadIndex(commands);
+
+        if (!indexed) {
+            scanCommands(commands, new Reflections("command.impl"));
+        }
+        loadPlugins(commands);
+
+        if (discovery != null) {
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            System.out.println("Commands registered from " + (indexed ? "index" : "classpath scan")
+                    + " in " + elapsedMicros + " us");
+        }
+    }
+
+    /**
+     * Register commands from the index generated at build time.
+     *
+     * @return true if the index was found and loaded, false otherwise
+     */
+    private static boolean loadIndex(Map<String, CommandEntry> commands) {
+        try {
+            CommandIndex index = (CommandIndex) Class.forName(CommandIndex.GENERATED_CLASS)
+                .getDeclaredConstructor().newInstance();
+            index.register((aliases, factory) -> register(commands, aliases, factory));
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (Exception e) {
+            System.err.println("Error loading command index: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Load commands from jars placed in the plugins directory.
+     */
+    private static void loadPlugins(Map<String, CommandEntry> commands) {
+        File[] jars = new File(PLUGIN_DIRECTORY).listFiles((dir, name) -> name.endsWith(".jar"));
+        if (jars == null || jars.length == 0) {
+            return;
+        }
+
+        try {
+            List<URL> urls = new ArrayList<>();
+            for (File jar : jars) {
+                urls.add(jar.toURI().toURL());
+            }
+
+            URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[0]), CommandRegistry.class.getClassLoader());
+            scanCommands(commands, new Reflections(new ConfigurationBuilder()
+                .addUrls(urls.toArray(new URL[0]))
+                .addClassLoaders(loader)));
+        } catch (Exception e) {
+            System.err.println("Error loading plugins: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Use reflection to find all classes that implement the Command interface
+     * and register them along with their aliases.
+     *
+     * @param reflections Scanner configured for the classes to search
+     */
+    private static void scanCommands(Map<String, CommandEntry> commands, Reflections reflections) {
+        try {
+            Set<Class<? extends Command>> commandClasses = reflections.getSubTypesOf(Command.class);
+
+            for (Class<? extends Command> commandClass : commandClasses) {
+                // Skip abstract classes and interfaces
+                if (Modifier.isAbstract(commandClass.getModifiers()) ||
+                    commandClass.isInterface()) {
+                    continue;
+                }
+
+                String[] aliases = commandClass.isAnnotationPresent(CommandAlias.class)
+                    ? commandClass.getAnnotation(CommandAlias.class).value()
+                    : new String[0];
+
+                register(commands, aliases, () -> {
+                    try {
+                        return commandClass.getDeclaredConstructor().newInstance();
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException("Cannot create command " + commandClass.getName(), e);
+                    }
+                });
+            }
+        } catch (Exception e) {
+            System.err.println("Error discovering commands: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Register a command factory under its aliases.
+     * Commands without aliases have to be created right away to learn their name.
+     */
+    private static void register(Map<String, CommandEntry> commands, String[] aliases, Supplier<Command> factory) {
+        CommandEntry entry = new CommandEntry(aliases, factory);
+
+        if (aliases.length == 0) {
+            Command command = entry.get();
+            if (command != null) {
+                commands.put(command.getName().toLowerCase(), entry);
+            }
+            return;
+        }
+
+        for (String alias : aliases) {
+            commands.put(alias.toLowerCase(), entry);
+        }
+    }
+
+    /**
+     * Get a command by name or alias.
+     *
+     * @param name Command name or alias
+     * @return Command instance or null if not found
+     */
+    public Command getCommand(String name) {
+        String key = name.toLowerCase();
+        CommandEntry entry = commandMap.get(key);
+        if (entry != null) {
+            return entry.get();
+        }
+
+        // The primary name of a command is not always one of its aliases
+        String canonicalName = getHelpIndex().canonicalNames.get(key);
+        return canonicalName != null ? getHelpIndex().commandsByName.get(canonicalName) : null;
+    }
+
+    /**
+     * Get all registered commands keyed by every name and alias.
+     *
+     * @return Unmodifiable map of command names and aliases to Command instances
+     */
+    public Map<String, Command> getCommands() {
+        return getHelpIndex().commandsByAlias;
+    }
+
+    /**
+     * Get all commands sorted by primary name, without duplicates.
+     *
+     * @return Unmodifiable sorted list of commands
+     */
+    public List<Command> getSortedCommands() {
+        return getHelpIndex().sortedCommands;
+    }
+
+    /**
+     * Get the primary names of all commands in sorted order.
+     *
+     * @return Unmodifiable sorted set of command names
+     */
+    public Set<String> getCommandNames() {
+        return getHelpIndex().commandsByName.keySet();
+    }
+
+    /**
+     * Get the map from every name and alias to the primary command name.
+     *
+     * @return Unmodifiable map of aliases to canonical command names
+     */
+    public Map<String, String> getCanonicalNames() {
+        return getHelpIndex().canonicalNames;
+    }
+
+    /**
+     * Get the help text listing all commands.
+     *
+     * @return Rendered help text
+     */
+    public String getHelpText() {
+        return getHelpIndex().overview;
+    }
+
+    /**
+     * Get the detailed help text for a command.
+     *
+     * @param name Command name or alias
+     * @return Rendered help text, or null if the command is unknown
+     */
+    public String getHelpText(String name) {
+        HelpIndex index = getHelpIndex();
+        String canonicalName = index.canonicalNames.get(name.toLowerCase());
+        return canonicalName != null ? index.details.get(canonicalName) : null;
+    }
+
+    /**
+     * Build the help index on first use. All commands have to be created for this,
+     * so it is deferred until help or completion actually needs it.
+     */
+    private HelpIndex getHelpIndex() {
+        HelpIndex index = helpIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = helpIndex;
+                if (index == null) {
+                    index = new HelpIndex(commandMap);
+                    helpIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Precomputed, read-only view of the commands used by help and completion.
+     */
+    private static final class HelpIndex {
+        private final Map<String, Command> commandsByAlias;
+        private final Map<String, Command> commandsByName;
+        private final Map<String, String> canonicalNames;
+        private final List<Command> sortedCommands;
+        private final Map<String, String> details;
+        private final String overview;
+
+        HelpIndex(Map<String, CommandEntry> commandMap) {
+            Map<String, Command> byAlias = new HashMap<>();
+            Map<String, Command> byName = new TreeMap<>();
+            Map<String, String> canonical = new HashMap<>();
+            Map<CommandEntry, Command> created = new HashMap<>();
+
+            for (Map.Entry<String, CommandEntry> entry : commandMap.entrySet()) {
+                Command command = created.computeIfAbsent(entry.getValue(), CommandEntry::get);
+                if (command == null) {
+                    continue;
+                }
+                String name = command.getName().toLowerCase();
+                byAlias.put(entry.getKey(), command);
+                byName.putIfAbsent(name, command);
+                canonical.put(entry.getKey(), name);
+            }
+
+            // Primary names always resolve to their own command
+            for (Map.Entry<String, Command> entry : byName.entrySet()) {
+                byAlias.putIfAbsent(entry.getKey(), entry.getValue());
+                canonical.putIfAbsent(entry.getKey(), entry.getKey());
+            }
+
+            Map<String, Set<String>> aliasesByName = new HashMap<>();
+            for (Map.Entry<CommandEntry, Command> entry : created.entrySet()) {
+                if (entry.getValue() != null && entry.getKey().aliases.length > 0) {
+                    aliasesByName.put(entry.getValue().getName().toLowerCase(),
+                        new TreeSet<>(Arrays.asList(entry.getKey().aliases)));
+                }
+            }
+
+            Map<String, String> rendered = new HashMap<>();
+            StringBuilder output = new StringBuilder();
+            output.append("Available commands:\n\n");
+
+            for (Map.Entry<String, Command> entry : byName.entrySet()) {
+                Command command = entry.getValue();
+                Set<String> aliases = aliasesByName.get(entry.getKey());
+
+                output.append(command.getName())
+                      .append(" - ")
+                      .append(command.getDescription())
+                      .append("\n");
+                if (aliases != null) {
+                    output.append("   Aliases: ")
+                          .append(String.join(", ", aliases))
+                          .append("\n");
+                }
+
+                rendered.put(entry.getKey(), renderDetails(command, aliases));
+            }
+
+            output.append("\nEnter 'help <command>' for more detailed information about a specific command.");
+
+            this.commandsByAlias = Collections.unmodifiableMap(byAlias);
+            this.commandsByName = Collections.unmodifiableMap(byName);
+            this.canonicalNames = Collections.unmodifiableMap(canonical);
+            this.sortedCommands = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(byName.values())));
+            this.details = Collections.unmodifiableMap(rendered);
+            this.overview = output.toString();
+        }
+
+        private static String renderDetails(Command command, Set<String> aliases) {
+            StringBuilder output = new StringBuilder();
+            output.append("Help for command '")
+                  .append(command.getName())
+                  .append("':\n\n");
+
+            output.append("Description: ")
+                  .append(command.getDescription())
+                  .append("\n\n");
+
+            output.append("Usage: ")
+                  .append(command.getUsage())
+                  .append("\n");
+
+            if (aliases != null) {
+                output.append("\nAliases: ")
+                      .append(String.join(", ", aliases))
+                      .append("\n");
+            }
+            return output.toString();
+        }
+    }
+
+    /**
+     * Registered command that is created on first use.
+     */
+    private static final class CommandEntry {
+        private final String[] aliases;
+        private final Supplier<Command> factory;
+        private Command instance;
+
+        CommandEntry(String[] aliases, Supplier<Command> factory) {
+            this.aliases = aliases;
+            this.factory = factory;
+        }
+
+        synchronized Command get() {
+            if (instance == null) {
+                try {
+                    instance = factory.get();
+                } catch (Exception e) {
+                    System.err.println("Error creating command: " + e.getMessage());
+                }
+            }
+            return instance;
+        }
+    }
+}
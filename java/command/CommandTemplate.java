@@ -0,0 +1,72 @@
+package command;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parsed form of a command before variables are bound.
+ * Tokens that reference variables keep their source text and are bound and
+ * tokenized on every use; all other tokens, and the alias resolution of a
+ * literal command name, are computed once and shared by every use.
+ */
+final class CommandTemplate {
+    static final CommandTemplate EMPTY = new CommandTemplate(null, Collections.emptyList(), new boolean[0],
+        Collections.emptySet());
+
+    private final String commandName;
+    private final List<String> tokens;
+    private final boolean[] dynamic;
+    private final List<String> staticArgs;
+    private final Set<String> aliasDependencies;
+
+    /**
+     * Create a template.
+     *
+     * @param commandName Resolved command name, or null if the name references variables
+     * @param tokens Arguments (or all tokens if the name is null); the source text for dynamic tokens
+     * @param dynamic Which tokens reference variables
+     * @param aliasDependencies Names looked up as aliases while resolving the command name
+     */
+    CommandTemplate(String commandName, List<String> tokens, boolean[] dynamic, Set<String> aliasDependencies) {
+        this.commandName = commandName;
+        this.tokens = Collections.unmodifiableList(tokens);
+        this.dynamic = dynamic;
+        this.aliasDependencies = Collections.unmodifiableSet(aliasDependencies);
+
+        boolean isStatic = commandName != null;
+        for (boolean tokenIsDynamic : dynamic) {
+            isStatic &= !tokenIsDynamic;
+        }
+        this.staticArgs = isStatic ? this.tokens : null;
+    }
+
+    boolean isEmpty() {
+        return commandName == null && tokens.isEmpty();
+    }
+
+    String getCommandName() {
+        return commandName;
+    }
+
+    List<String> getTokens() {
+        return tokens;
+    }
+
+    boolean isDynamic(int index) {
+        return dynamic[index];
+    }
+
+    /**
+     * Get the arguments if no token references variables.
+     *
+     * @return Unmodifiable arguments, or null if the template has to be bound
+     */
+    List<String> getStaticArgs() {
+        return staticArgs;
+    }
+
+    Set<String> getAliasDependencies() {
+        return aliasDependencies;
+    }
+}
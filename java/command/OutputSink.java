@@ -0,0 +1,33 @@
+package command;
+
+/**
+ * Receives command output as it is produced.
+ * Streaming commands write their output in chunks instead of building one large
+ * string. Implementations may block in {@link #write(String)} to slow down a
+ * command that produces output faster than it can be displayed.
+ */
+public interface OutputSink {
+    
+    /**
+     * Write a chunk of regular output.
+     * 
+     * @param text Output text
+     */
+    void write(String text);
+    
+    /**
+     * Write a chunk of error output.
+     * 
+     * @param text Error text
+     */
+    void writeError(String text);
+    
+    /**
+     * Write a line of regular output.
+     * 
+     * @param line Output line without line separator
+     */
+    default void writeLine(String line) {
+        write(line + "\n");
+    }
+}
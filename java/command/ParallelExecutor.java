@@ -0,0 +1,214 @@
+package command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import commandUtils.FileManager;
+import ui.ConsoleUI;
+
+/**
+ * Executes a group of independent commands such as {@code ls dirA & ls dirB & read a.txt}
+ * concurrently on a thread pool. Output and results are delivered in submission order:
+ * the first unfinished command streams its output directly, the output of the
+ * commands after it is buffered until it is their turn. A command whose buffer is
+ * full waits, like a writer on a full pipe, so a command with a lot of output does
+ * not have to fit in memory.
+ *
+ * The working directory is frozen while a group runs, so all commands of the group
+ * resolve relative paths against the same directory. A group containing a command
+ * that changes the directory, such as {@code cd}, is rejected before anything runs.
+ */
+public class ParallelExecutor {
+    // Characters of output buffered per command before the command has to wait for its turn
+    private static final int MAX_BUFFERED_CHARS = 1024 * 1024;
+
+    // Not bounded: a command of a group, such as a script, can run a group itself and wait for it
+    private static final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "parallel-command");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CommandExecutor commandExecutor;
+    private final PipelineExecutor pipelineExecutor;
+
+    /**
+     * Receives the result of each command of a group, in submission order.
+     */
+    public interface ResultHandler {
+
+        /**
+         * Called after the output of the command has been written to the sink.
+         *
+         * @param command The executed command (the last stage for pipelines)
+         * @param result Final result of the command
+         */
+        void onResult(ParsedCommand command, CommandResult result);
+    }
+
+    /**
+     * Create a parallel executor running commands with the given executor.
+     *
+     * @param commandExecutor Executor used to run the commands
+     */
+    public ParallelExecutor(CommandExecutor commandExecutor) {
+        this.commandExecutor = commandExecutor;
+        this.pipelineExecutor = new PipelineExecutor(commandExecutor);
+    }
+
+    /**
+     * Execute the commands of the group concurrently and wait for all of them.
+     *
+     * @param commands Commands of the group in order, each one a pipeline of one or more stages
+     * @param consoleUI Reference to the console UI for commands that need UI access
+     * @param sink Sink receiving the output of all commands in order
+     * @param handler Handler receiving the result of each command in order
+     */
+    public void execute(List<List<ParsedCommand>> commands, ConsoleUI consoleUI, OutputSink sink,
+            ResultHandler handler) {
+        ParsedCommand conflict = findDirectoryChange(commands);
+        if (conflict != null) {
+            handler.onResult(conflict, CommandResult.error("'" + conflict.getCommandName()
+                + "' changes the working directory and cannot run in parallel. Use ';' instead."));
+            return;
+        }
+
+        List<OrderedSink> sinks = new ArrayList<>();
+        List<Future<CommandResult>> futures = new ArrayList<>();
+
+        FileManager.freezeCurrentDirectory();
+        try {
+            for (List<ParsedCommand> stages : commands) {
+                OrderedSink commandSink = new OrderedSink(sink);
+                sinks.add(commandSink);
+                futures.add(workers.submit(() -> pipelineExecutor.execute(stages, consoleUI, commandSink)));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                // Let the command stream directly from now on, after its buffered output
+                sinks.get(i).goLive();
+
+                CommandResult result;
+                try {
+                    result = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    result = CommandResult.error("Command failed: " + e.getCause().getMessage());
+                }
+
+                List<ParsedCommand> stages = commands.get(i);
+                handler.onResult(stages.get(stages.size() - 1), result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<CommandResult> future : futures) {
+                future.cancel(true);
+            }
+            FileManager.unfreezeCurrentDirectory();
+        }
+    }
+
+    /**
+     * Find a command of the group that would change the working directory.
+     *
+     * @return The command, or null if there is none
+     */
+    private ParsedCommand findDirectoryChange(List<List<ParsedCommand>> commands) {
+        for (List<ParsedCommand> stages : commands) {
+            for (ParsedCommand stage : stages) {
+                Command command = commandExecutor.getCommand(stage.getCommandName());
+                if (command != null && command.changesWorkingDirectory(stage.getArgs())) {
+                    return stage;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sink that buffers the output of a command until it is the command's turn,
+     * then writes the buffered output and forwards everything after it. The writer
+     * blocks while {@value #MAX_BUFFERED_CHARS} characters or more are buffered.
+     */
+    private static final class OrderedSink implements OutputSink {
+        private final OutputSink target;
+        private List<StringBuilder> chunks = new ArrayList<>();
+        private List<Boolean> errorFlags = new ArrayList<>();
+        private int buffered;
+        private boolean live = false;
+
+        OrderedSink(OutputSink target) {
+            this.target = target;
+        }
+
+        @Override
+        public synchronized void write(String text) {
+            if (!awaitRoom()) {
+                return;
+            }
+            if (live) {
+                target.write(text);
+            } else {
+                buffer(text, false);
+            }
+        }
+
+        @Override
+        public synchronized void writeError(String text) {
+            if (!awaitRoom()) {
+                return;
+            }
+            if (live) {
+                target.writeError(text);
+            } else {
+                buffer(text, true);
+            }
+        }
+
+        /**
+         * Wait until the command is live or its buffer has room.
+         *
+         * @return false if the command was interrupted while waiting; its output is dropped
+         */
+        private boolean awaitRoom() {
+            while (!live && buffered >= MAX_BUFFERED_CHARS) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void buffer(String text, boolean error) {
+            buffered += text.length();
+            int last = chunks.size() - 1;
+            if (last >= 0 && errorFlags.get(last) == error) {
+                chunks.get(last).append(text);
+            } else {
+                chunks.add(new StringBuilder(text));
+                errorFlags.add(error);
+            }
+        }
+
+        synchronized void goLive() {
+            for (int i = 0; i < chunks.size(); i++) {
+                if (errorFlags.get(i)) {
+                    target.writeError(chunks.get(i).toString());
+                } else {
+                    target.write(chunks.get(i).toString());
+                }
+            }
+            chunks = null;
+            errorFlags = null;
+            live = true;
+            notifyAll();
+        }
+    }
+}
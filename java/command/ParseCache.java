@@ -0,0 +1,147 @@
+package command;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared LRU cache of command templates keyed by the command text after command
+ * substitution. Entries record the alias names their resolution depended on and
+ * are dropped as soon as one of these aliases is created, changed or removed.
+ */
+final class ParseCache {
+    private static final int CAPACITY = 1024;
+
+    // Guarded by this
+    private final Map<String, CommandTemplate> entries = new LinkedHashMap<String, CommandTemplate>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CommandTemplate> eldest) {
+            if (size() > CAPACITY) {
+                unindex(eldest.getKey(), eldest.getValue());
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<String, Set<String>> keysByAlias = new HashMap<>();
+    // Incremented on every invalidation, so templates built before it are not stored
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    private ParseCache() {
+        AliasRegistry.getInstance().addChangeListener(this::invalidate);
+        StatsRegistry.register("parse cache", this::getStats);
+    }
+
+    /**
+     * Get the shared parse cache.
+     *
+     * @return The parse cache
+     */
+    static ParseCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        private static final ParseCache INSTANCE = new ParseCache();
+    }
+
+    /**
+     * Get the current version, to be passed to {@link #put} for a template built afterwards.
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Look up the template for a command.
+     *
+     * @param key Command text after command substitution
+     * @return The cached template, or null if there is none
+     */
+    synchronized CommandTemplate get(String key) {
+        CommandTemplate template = entries.get(key);
+        if (template != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return template;
+    }
+
+    /**
+     * Store a template unless aliases changed since it was built.
+     *
+     * @param key Command text after command substitution
+     * @param template Template built for the key
+     * @param builtAt Version returned by {@link #getVersion()} before the template was built
+     */
+    synchronized void put(String key, CommandTemplate template, long builtAt) {
+        if (builtAt != version) {
+            return;
+        }
+
+        CommandTemplate previous = entries.put(key, template);
+        if (previous != null) {
+            unindex(key, previous);
+        }
+        for (String alias : template.getAliasDependencies()) {
+            keysByAlias.computeIfAbsent(alias, name -> new HashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Drop the templates that depend on an alias.
+     *
+     * @param aliasName Changed alias, or null to drop all templates
+     */
+    synchronized void invalidate(String aliasName) {
+        version++;
+
+        if (aliasName == null) {
+            invalidations += entries.size();
+            entries.clear();
+            keysByAlias.clear();
+            return;
+        }
+
+        Set<String> keys = keysByAlias.remove(aliasName);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            CommandTemplate template = entries.remove(key);
+            if (template != null) {
+                unindex(key, template);
+                invalidations++;
+            }
+        }
+    }
+
+    private void unindex(String key, CommandTemplate template) {
+        for (String alias : template.getAliasDependencies()) {
+            Set<String> keys = keysByAlias.get(alias);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByAlias.remove(alias);
+                }
+            }
+        }
+    }
+
+    private synchronized String getStats() {
+        long lookups = hits + misses;
+        long hitRate = lookups == 0 ? 0 : Math.round(hits * 100.0 / lookups);
+        return "hits: " + hits + ", misses: " + misses + " (" + hitRate + "% hit rate), entries: "
+            + entries.size() + "/" + CAPACITY + ", evictions: " + evictions + ", invalidations: " + invalidations;
+    }
+}
@@ -0,0 +1,284 @@
+package command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import ui.ConsoleUI;
+
+/**
+ * Executes a pipeline of commands such as {@code read big.log | grep ERROR | count}.
+ * Every stage runs on its own thread and stages are connected by bounded queues,
+ * so memory use does not depend on the amount of data flowing through the pipeline.
+ */
+public class PipelineExecutor {
+    // Lines are passed between stages in batches to keep queue synchronization cheap
+    private static final int BATCH_SIZE = 256;
+    private static final int QUEUE_CAPACITY = 16;
+
+    private static final ExecutorService stageThreads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "pipeline-stage");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CommandExecutor commandExecutor;
+
+    /**
+     * Create a pipeline executor running commands with the given executor.
+     *
+     * @param commandExecutor Executor used to run the pipeline stages
+     */
+    public PipelineExecutor(CommandExecutor commandExecutor) {
+        this.commandExecutor = commandExecutor;
+    }
+
+    /**
+     * Execute the pipeline. The last stage runs on the calling thread and writes to
+     * the given sink; the other stages run concurrently and write to the next stage.
+     *
+     * @param stages Commands of the pipeline in order
+     * @param consoleUI Reference to the console UI for commands that need UI access
+     * @param sink Sink receiving the output of the last stage and errors of all stages
+     * @return Result of the last stage, or an error result if an earlier stage failed
+     */
+    public CommandResult execute(List<ParsedCommand> stages, ConsoleUI consoleUI, OutputSink sink) {
+        if (stages.size() == 1) {
+            return commandExecutor.execute(stages.get(0), consoleUI, sink);
+        }
+
+        // Error output of all stages goes to the same sink from different threads
+        OutputSink errors = new SynchronizedErrorSink(sink);
+        List<Future<CommandResult>> upstream = new ArrayList<>();
+        List<Pipe> pipes = new ArrayList<>();
+        Pipe previous = null;
+
+        try {
+            for (int i = 0; i < stages.size() - 1; i++) {
+                ParsedCommand stage = stages.get(i);
+                CommandInput input = previous;
+                Pipe output = new Pipe(errors);
+                pipes.add(output);
+                upstream.add(stageThreads.submit(() -> runStage(stage, consoleUI, input, output)));
+                previous = output;
+            }
+
+            CommandResult result;
+            try {
+                result = commandExecutor.execute(stages.get(stages.size() - 1), consoleUI, previous,
+                    new LastStageSink(sink, errors));
+            } finally {
+                // Stop upstream stages that are still writing into a pipe nobody reads anymore
+                for (Pipe pipe : pipes) {
+                    pipe.closeReader();
+                }
+            }
+
+            return combineResults(upstream, result);
+        } finally {
+            for (Future<CommandResult> future : upstream) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private CommandResult runStage(ParsedCommand stage, ConsoleUI consoleUI, CommandInput input, Pipe output) {
+        try {
+            CommandResult result = commandExecutor.execute(stage, consoleUI, input, output);
+            if (output.isBroken()) {
+                // The next stage stopped reading, the result of this stage no longer matters
+                return null;
+            }
+            // Non-error result output is part of the stage output
+            if (result != null && result.hasOutput() && !result.isError()) {
+                output.writeLine(result.getOutput());
+            }
+            return result;
+        } finally {
+            output.closeWriter();
+            if (input instanceof Pipe) {
+                ((Pipe) input).closeReader();
+            }
+        }
+    }
+
+    /**
+     * Wait for the upstream stages and report the first error among them.
+     */
+    private CommandResult combineResults(List<Future<CommandResult>> upstream, CommandResult result) {
+        for (Future<CommandResult> future : upstream) {
+            try {
+                CommandResult stageResult = future.get();
+                if (stageResult != null && stageResult.isError() && (result == null || !result.isError())) {
+                    return stageResult;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return CommandResult.error("Pipeline interrupted.");
+            } catch (ExecutionException e) {
+                return CommandResult.error("Pipeline stage failed: " + e.getCause().getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bounded queue of lines connecting two pipeline stages.
+     * The writer blocks while the queue is full, and writes are discarded once the
+     * reader has finished.
+     */
+    private static final class Pipe implements OutputSink, CommandInput {
+        private static final List<String> END = new ArrayList<>(0);
+
+        private final BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final OutputSink errors;
+        private final StringBuilder partialLine = new StringBuilder();
+        private List<String> batch = new ArrayList<>(BATCH_SIZE);
+        private List<String> readBatch;
+        private int readIndex;
+        private volatile boolean readerClosed = false;
+        private boolean writerClosed = false;
+        private boolean broken = false;
+
+        Pipe(OutputSink errors) {
+            this.errors = errors;
+        }
+
+        @Override
+        public void write(String text) {
+            int start = 0;
+            int newline;
+            while ((newline = text.indexOf('\n', start)) >= 0) {
+                partialLine.append(text, start, newline);
+                addLine(partialLine.toString());
+                partialLine.setLength(0);
+                start = newline + 1;
+            }
+            partialLine.append(text, start, text.length());
+        }
+
+        @Override
+        public void writeError(String text) {
+            errors.writeError(text);
+        }
+
+        private void addLine(String line) {
+            batch.add(line);
+            if (batch.size() >= BATCH_SIZE) {
+                put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        private void put(List<String> lines) {
+            try {
+                while (!readerClosed) {
+                    if (queue.offer(lines, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+                // Nobody reads the output anymore, stop the writing command like a broken pipe
+                if (!writerClosed) {
+                    broken = true;
+                    Thread.currentThread().interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        boolean isBroken() {
+            return broken;
+        }
+
+        void closeWriter() {
+            if (writerClosed) {
+                return;
+            }
+            writerClosed = true;
+            if (partialLine.length() > 0) {
+                addLine(partialLine.toString());
+                partialLine.setLength(0);
+            }
+            if (!batch.isEmpty()) {
+                put(batch);
+            }
+            put(END);
+        }
+
+        void closeReader() {
+            readerClosed = true;
+            queue.clear();
+        }
+
+        @Override
+        public String readLine() {
+            while (readBatch == null || readIndex >= readBatch.size()) {
+                if (readBatch == END) {
+                    return null;
+                }
+                try {
+                    readBatch = queue.take();
+                    readIndex = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return readBatch.get(readIndex++);
+        }
+    }
+
+    /**
+     * Serializes error output written by concurrent stages.
+     */
+    private static final class SynchronizedErrorSink implements OutputSink {
+        private final OutputSink target;
+
+        SynchronizedErrorSink(OutputSink target) {
+            this.target = target;
+        }
+
+        @Override
+        public synchronized void write(String text) {
+            target.write(text);
+        }
+
+        @Override
+        public synchronized void writeError(String text) {
+            target.writeError(text);
+        }
+    }
+
+    /**
+     * Sink of the last stage. Shares the lock of the error sink so its output
+     * does not interleave with errors from the other stages.
+     */
+    private static final class LastStageSink implements OutputSink {
+        private final OutputSink target;
+        private final OutputSink lock;
+
+        LastStageSink(OutputSink target, OutputSink lock) {
+            this.target = target;
+            this.lock = lock;
+        }
+
+        @Override
+        public void write(String text) {
+            synchronized (lock) {
+                target.write(text);
+            }
+        }
+
+        @Override
+        public void writeError(String text) {
+            lock.writeError(text);
+        }
+    }
+}
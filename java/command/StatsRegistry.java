@@ -0,0 +1,52 @@
+package command;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Registry of runtime statistics shown by the {@code stats} command.
+ * Components register a named source once; the source is asked for a fresh
+ * snapshot every time the statistics are displayed.
+ */
+public final class StatsRegistry {
+    private static final Map<String, Supplier<?>> sources = new LinkedHashMap<>();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private StatsRegistry() {
+    }
+
+    /**
+     * Register a source of statistics, replacing a source with the same name.
+     *
+     * @param name Name of the section, e.g. "parse cache"
+     * @param source Supplier of the current statistics; its toString() is displayed
+     */
+    public static synchronized void register(String name, Supplier<?> source) {
+        sources.put(name, source);
+    }
+
+    /**
+     * Get the current statistics of all sources in registration order.
+     *
+     * @return Map of section names to rendered statistics
+     */
+    public static Map<String, String> snapshot() {
+        Map<String, Supplier<?>> current;
+        synchronized (StatsRegistry.class) {
+            current = new LinkedHashMap<>(sources);
+        }
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Supplier<?>> entry : current.entrySet()) {
+            try {
+                result.put(entry.getKey(), String.valueOf(entry.getValue().get()));
+            } catch (Exception e) {
+                result.put(entry.getKey(), "unavailable (" + e.getMessage() + ")");
+            }
+        }
+        return result;
+    }
+}
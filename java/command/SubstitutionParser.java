@@ -0,0 +1,208 @@
+package command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for command substitutions of the form {@code $(command)}.
+ * The input is read once, left to right, into a tree of text and substitution
+ * nodes, which is then evaluated bottom-up: the innermost commands run first and
+ * their output becomes part of the command text of the enclosing substitution.
+ *
+ * Inside a substitution, quotes and parentheses belong to the inner command, so
+ * {@code $(print ")")} and {@code $(calc (1 + 2) * 3)} end at the right place.
+ * Substitutions are also expanded inside quotes of the enclosing text, and the
+ * output of a command is never scanned for substitutions again.
+ */
+final class SubstitutionParser {
+
+    /**
+     * Runs the command of a substitution.
+     */
+    interface Evaluator {
+
+        /**
+         * Execute a command and return the text that replaces its substitution.
+         *
+         * @param command Command text with all nested substitutions already expanded
+         * @return Replacement text, never null
+         */
+        String evaluate(String command);
+    }
+
+    private final String input;
+    private int pos;
+
+    private SubstitutionParser(String input) {
+        this.input = input;
+    }
+
+    /**
+     * Check whether the input contains a command substitution.
+     *
+     * @param input Input to check
+     * @return true if the input contains "$("
+     */
+    static boolean containsSubstitution(String input) {
+        return input != null && input.contains("$(");
+    }
+
+    /**
+     * Expand all command substitutions of the input.
+     *
+     * @param input Input with potential command substitutions
+     * @param evaluator Evaluator running the commands
+     * @return Input with every substitution replaced by the output of its command
+     */
+    static String expand(String input, Evaluator evaluator) {
+        if (!containsSubstitution(input)) {
+            return input;
+        }
+
+        List<Node> nodes = new SubstitutionParser(input).parseSequence(false);
+        StringBuilder result = new StringBuilder(input.length());
+        for (Node node : nodes) {
+            node.evaluate(result, evaluator);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Parse text up to the end of the input, or up to the closing parenthesis of
+     * the enclosing substitution.
+     *
+     * @param inSubstitution Whether the text is the command of a substitution
+     * @return Nodes of the text in order
+     */
+    private List<Node> parseSequence(boolean inSubstitution) {
+        List<Node> nodes = new ArrayList<>();
+        int textStart = pos;
+        char quoteChar = 0;
+        int parenDepth = 0;
+
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+
+            // Escaped characters never start or end anything
+            if (c == '\\' && pos + 1 < input.length()) {
+                pos += 2;
+                continue;
+            }
+
+            if (c == '$' && pos + 1 < input.length() && input.charAt(pos + 1) == '(') {
+                addText(nodes, textStart, pos);
+                pos += 2;
+                nodes.add(parseSubstitution());
+                textStart = pos;
+                continue;
+            }
+
+            if (quoteChar != 0) {
+                if (c == quoteChar) {
+                    quoteChar = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quoteChar = c;
+            } else if (inSubstitution && c == '(') {
+                parenDepth++;
+            } else if (inSubstitution && c == ')') {
+                if (parenDepth == 0) {
+                    // End of the enclosing substitution, the caller consumes the parenthesis
+                    addText(nodes, textStart, pos);
+                    return nodes;
+                }
+                parenDepth--;
+            }
+            pos++;
+        }
+
+        addText(nodes, textStart, pos);
+        return nodes;
+    }
+
+    /**
+     * Parse a substitution whose "$(" has just been consumed.
+     */
+    private Node parseSubstitution() {
+        List<Node> command = parseSequence(true);
+        if (pos < input.length()) {
+            pos++; // closing parenthesis
+            return new SubstitutionNode(command);
+        }
+        // Unclosed substitution, keep it as text (nested complete ones are still expanded)
+        List<Node> literal = new ArrayList<>(command.size() + 1);
+        literal.add(new TextNode("$(", 0, 2));
+        literal.addAll(command);
+        return new SequenceNode(literal);
+    }
+
+    private void addText(List<Node> nodes, int start, int end) {
+        if (end > start) {
+            nodes.add(new TextNode(input, start, end));
+        }
+    }
+
+    /**
+     * Node of the parsed input.
+     */
+    private interface Node {
+
+        /**
+         * Append the expanded text of the node.
+         */
+        void evaluate(StringBuilder output, Evaluator evaluator);
+    }
+
+    /**
+     * Range of the input copied as it is.
+     */
+    private static final class TextNode implements Node {
+        private final String source;
+        private final int start;
+        private final int end;
+
+        TextNode(String source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void evaluate(StringBuilder output, Evaluator evaluator) {
+            output.append(source, start, end);
+        }
+    }
+
+    private static final class SequenceNode implements Node {
+        private final List<Node> parts;
+
+        SequenceNode(List<Node> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public void evaluate(StringBuilder output, Evaluator evaluator) {
+            for (Node part : parts) {
+                part.evaluate(output, evaluator);
+            }
+        }
+    }
+
+    private static final class SubstitutionNode implements Node {
+        private final List<Node> command;
+
+        SubstitutionNode(List<Node> command) {
+            this.command = command;
+        }
+
+        @Override
+        public void evaluate(StringBuilder output, Evaluator evaluator) {
+            // Expand nested substitutions first, then run the resulting command
+            StringBuilder commandText = new StringBuilder();
+            for (Node part : command) {
+                part.evaluate(commandText, evaluator);
+            }
+            output.append(evaluator.evaluate(commandText.toString()));
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package command.impl;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import command.AliasRegistry;
 import command.Command;
 import command.CommandAlias;
 import command.CommandResult;
-import commandUtils.Cache;
 
 /**
  * Command for creating and managing command aliases. Allows creating custom
@@ -16,8 +15,6 @@ import commandUtils.Cache;
 @CommandAlias({ "alias" })
 public class Alias implements Command {
 
-	private static final String ALIAS_CACHE_PREFIX = "alias_";
-
 	@Override
 	public String getName() {
 		return "alias";
@@ -31,7 +28,7 @@ public class Alias implements Command {
 	@Override
 	public String getUsage() {
 		StringBuilder usage = new StringBuilder();
-		usage.append("alias <alias> <command> - Create an alias for a command\n");
+		usage.append("alias <alias> <command> - Create an alias for a command; $1, $2, ... and $@ stand for its arguments\n");
 		usage.append("alias list - Show all created aliases\n");
 		usage.append("alias remove <alias> - Remove an alias\n");
 		usage.append("alias clear - Remove all aliases");
@@ -93,8 +90,11 @@ public class Alias implements Command {
 			return new CommandResult(true, "Cannot create an alias with a system command name: " + aliasName);
 		}
 
-		String cacheKey = ALIAS_CACHE_PREFIX + aliasName;
-		Cache.put(cacheKey, command);
+		try {
+			AliasRegistry.getInstance().put(aliasName, command);
+		} catch (IllegalArgumentException e) {
+			return new CommandResult(true, e.getMessage());
+		}
 
 		return new CommandResult(false, "Alias created: " + aliasName + " -> " + command);
 	}
@@ -105,7 +105,7 @@ public class Alias implements Command {
 	 * @return Operation result
 	 */
 	private CommandResult listAliases() {
-		Map<String, Object> allAliases = getAllAliases();
+		Map<String, String> allAliases = AliasRegistry.getInstance().getAll();
 
 		if (allAliases.isEmpty()) {
 			return new CommandResult(false, "No aliases created");
@@ -114,7 +114,7 @@ public class Alias implements Command {
 		StringBuilder result = new StringBuilder();
 		result.append("Created aliases (" + allAliases.size() + "):\n");
 
-		for (Map.Entry<String, Object> entry : allAliases.entrySet()) {
+		for (Map.Entry<String, String> entry : allAliases.entrySet()) {
 			result.append(entry.getKey()).append(" -> ").append(entry.getValue()).append("\n");
 		}
 
@@ -128,10 +128,7 @@ public class Alias implements Command {
 	 * @return Operation result
 	 */
 	private CommandResult removeAlias(String aliasName) {
-		String cacheKey = ALIAS_CACHE_PREFIX + aliasName;
-
-		if (Cache.containsKey(cacheKey)) {
-			Cache.remove(cacheKey);
+		if (AliasRegistry.getInstance().remove(aliasName)) {
 			return new CommandResult(false, "Alias removed: " + aliasName);
 		} else {
 			return new CommandResult(true, "Alias not found: " + aliasName);
@@ -144,40 +141,15 @@ public class Alias implements Command {
 	 * @return Operation result
 	 */
 	private CommandResult clearAliases() {
-		Map<String, Object> allAliases = getAllAliases();
-		int count = allAliases.size();
+		int count = AliasRegistry.getInstance().clear();
 
 		if (count == 0) {
 			return new CommandResult(false, "No created aliases");
 		}
 
-		for (String aliasName : allAliases.keySet()) {
-			Cache.remove(ALIAS_CACHE_PREFIX + aliasName);
-		}
-
 		return new CommandResult(false, "Removed all aliases (" + count + ")");
 	}
 
-	/**
-	 * Get all created aliases.
-	 * 
-	 * @return Map of aliases and their corresponding commands
-	 */
-	public static Map<String, Object> getAllAliases() {
-		Map<String, Object> all = Cache.getAll();
-		Map<String, Object> aliases = new HashMap<>();
-
-		for (Map.Entry<String, Object> entry : all.entrySet()) {
-			String key = entry.getKey();
-			if (key.startsWith(ALIAS_CACHE_PREFIX)) {
-				String aliasName = key.substring(ALIAS_CACHE_PREFIX.length());
-				aliases.put(aliasName, entry.getValue());
-			}
-		}
-
-		return aliases;
-	}
-
 	/**
 	 * Checks if the string is a system command name.
 	 * 
@@ -186,9 +158,9 @@ public class Alias implements Command {
 	 */
 	private boolean isSystemCommand(String name) {
 		// List of commands for which aliases cannot be created
-		String[] systemCommands = { "alias", "cache", "calc", "cd", "cls", "clear", "env", "exit", "help", "dir", "ls",
-				"mkdir", "touch", "open", "print", "echo", "read", "rm", "remove", "delete", "del", "script", "var",
-				"write" };
+		String[] systemCommands = { "alias", "cache", "calc", "cd", "cls", "clear", "count", "env", "exit", "grep",
+				"help", "dir", "ls", "mkdir", "touch", "open", "print", "echo", "read", "rm", "remove", "delete", "del",
+				"script", "stats", "var", "wc", "write" };
 
 		String nameLower = name.toLowerCase();
 		for (String cmd : systemCommands) {
@@ -199,25 +171,4 @@ public class Alias implements Command {
 
 		return false;
 	}
-
-	/**
-	 * Checks if the string is an alias name.
-	 * 
-	 * @param name Name to check
-	 * @return true if it's an existing alias name
-	 */
-	public static boolean isAlias(String name) {
-		return Cache.containsKey(ALIAS_CACHE_PREFIX + name);
-	}
-
-	/**
-	 * Gets the command corresponding to an alias.
-	 * 
-	 * @param aliasName Alias name
-	 * @return Command corresponding to the alias, or null if alias not found
-	 */
-	public static String getAliasCommand(String aliasName) {
-		Object cmd = Cache.get(ALIAS_CACHE_PREFIX + aliasName);
-		return cmd != null ? cmd.toString() : null;
-	}
-}
\ No newline at end of file
+}
@@ -1,19 +1,30 @@
 package command.impl;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
+import command.CollectingSink;
 import command.Command;
 import command.CommandAlias;
 import command.CommandResult;
+import command.OutputSink;
 import commandUtils.Cache;
+import commandUtils.FileManager;
 
 /**
  * Command for working with the cache.
- * Supports operations: put, get, remove, clear, list.
+ * Supports operations: set, mset, get, mget, remove, clear, list, keys, import, export, stats.
+ * The batch operations (mset, import) write each batch to disk at once.
+ * Listings walk the sorted key index of the cache and are streamed a page at a time.
  */
 @CommandAlias({"cache"})
 public class CacheCommand implements Command {
+    private static final int DEFAULT_PAGE_SIZE = 1000;
     
     @Override
     public String getName() {
@@ -22,24 +33,35 @@ public class CacheCommand implements Command {
     
     @Override
     public String getDescription() {
-        return "Cache management. Available operations: set, get, remove, clear, list";
+        return "Cache management. Available operations: set, mset, get, mget, remove, clear, list, keys, import, export, stats";
     }
     
     @Override
     public String getUsage() {
         StringBuilder usage = new StringBuilder();
-        usage.append("cache set <key> <value> - Save a value to the cache\n");
+        usage.append("cache set [--ttl <duration>] <key> <value> - Save a value to the cache, optionally expiring (e.g. 30s, 5m, 2h)\n");
+        usage.append("cache mset <key1> <value1> [<key2> <value2> ...] - Save several values at once\n");
         usage.append("cache get <key> - Get a value from the cache\n");
+        usage.append("cache mget <key1> [<key2> ...] - Get several values\n");
         usage.append("cache remove <key> - Remove a value from the cache\n");
         usage.append("cache clear - Clear the cache\n");
-        usage.append("cache list - Show all entries in the cache");
+        usage.append("cache list [--prefix <prefix>] [--limit <n>] [--after <key>] - Show entries in key order, a page at a time\n");
+        usage.append("cache keys [<pattern>] [--limit <n>] [--after <key>] - Show keys matching a pattern with * and ?, e.g. 'proj.*.path'\n");
+        usage.append("cache import <file.json> - Load the entries of a JSON object file\n");
+        usage.append("cache export <file.json> - Save all entries to a JSON object file\n");
+        usage.append("cache stats - Show hit, eviction and persistence counters");
         return usage.toString();
     }
     
     @Override
     public CommandResult execute(List<String> args) {
+        return CollectingSink.execute(this, args);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, OutputSink sink) {
         if (args.isEmpty()) {
-            return new CommandResult(true, "Operation must be specified. Available operations: put, get, remove, clear, list");
+            return new CommandResult(true, "Operation must be specified. Available operations: set, mset, get, mget, remove, clear, list, keys, import, export, stats");
         }
         
         String operation = args.get(0).toLowerCase();
@@ -47,40 +69,135 @@ public class CacheCommand implements Command {
         switch (operation) {
             case "set":
                 return handlePut(args);
+            case "mset":
+                return handleMultiPut(args);
             case "get":
                 return handleGet(args);
+            case "mget":
+                return handleMultiGet(args);
             case "remove":
                 return handleRemove(args);
             case "clear":
                 return handleClear();
             case "list":
-                return handleList();
+                return handleList(args, sink);
+            case "keys":
+                return handleKeys(args, sink);
+            case "import":
+                return handleImport(args);
+            case "export":
+                return handleExport(args);
+            case "stats":
+                return handleStats();
             default:
                 return new CommandResult(true, "Unknown operation: " + operation + 
-                        "\nAvailable operations: set, get, remove, clear, list");
+                        "\nAvailable operations: set, mset, get, mget, remove, clear, list, keys, import, export, stats");
         }
     }
     
     private CommandResult handlePut(List<String> args) {
-        if (args.size() < 3) {
-            return new CommandResult(true, "Not enough arguments. Usage: cache set <key> <value>");
+        int first = 1;
+        long ttlMillis = 0;
+        if (args.size() > 1 && args.get(1).equals("--ttl")) {
+            if (args.size() < 3) {
+                return new CommandResult(true, "Missing duration after --ttl");
+            }
+            ttlMillis = parseDuration(args.get(2));
+            if (ttlMillis <= 0) {
+                return new CommandResult(true, "Invalid duration: " + args.get(2) + " (use e.g. 500ms, 30s, 5m, 2h, 1d)");
+            }
+            first = 3;
+        }
+        if (args.size() < first + 2) {
+            return new CommandResult(true, "Not enough arguments. Usage: cache set [--ttl <duration>] <key> <value>");
         }
         
-        String key = args.get(1);
+        String key = args.get(first);
         // Join all remaining arguments into a single value
         StringBuilder valueBuilder = new StringBuilder();
-        for (int i = 2; i < args.size(); i++) {
-            if (i > 2) {
+        for (int i = first + 1; i < args.size(); i++) {
+            if (i > first + 1) {
                 valueBuilder.append(" ");
             }
             valueBuilder.append(args.get(i));
         }
         String value = valueBuilder.toString();
         
-        Cache.put(key, value);
+        try {
+            Cache.put(key, value, ttlMillis);
+        } catch (UncheckedIOException e) {
+            return new CommandResult(true, "Error saving to cache: " + e.getCause().getMessage());
+        }
+        if (ttlMillis > 0) {
+            return new CommandResult(false, "Value saved to cache: " + key + " = " + value
+                    + " (expires in " + args.get(2) + ")");
+        }
         return new CommandResult(false, "Value saved to cache: " + key + " = " + value);
     }
     
+    /**
+     * Parse a duration such as 500ms, 30s, 5m, 2h or 1d. A number without unit is in seconds.
+     * 
+     * @param text Duration to parse
+     * @return Duration in milliseconds, or -1 if the text is not a valid duration
+     */
+    private static long parseDuration(String text) {
+        int end = 0;
+        while (end < text.length() && Character.isDigit(text.charAt(end))) {
+            end++;
+        }
+        if (end == 0 || end > 12) {
+            return -1;
+        }
+        long amount = Long.parseLong(text.substring(0, end));
+        long unit;
+        switch (text.substring(end).toLowerCase()) {
+            case "ms":
+                unit = 1;
+                break;
+            case "":
+            case "s":
+                unit = 1000;
+                break;
+            case "m":
+                unit = 60_000;
+                break;
+            case "h":
+                unit = 3_600_000;
+                break;
+            case "d":
+                unit = 86_400_000;
+                break;
+            default:
+                return -1;
+        }
+        try {
+            long millis = Math.multiplyExact(amount, unit);
+            // The expiry time must fit as well
+            Math.addExact(System.currentTimeMillis(), millis);
+            return millis;
+        } catch (ArithmeticException e) {
+            return -1;
+        }
+    }
+    
+    private CommandResult handleMultiPut(List<String> args) {
+        if (args.size() < 3 || args.size() % 2 == 0) {
+            return new CommandResult(true, "Keys and values must come in pairs. Usage: cache mset <key1> <value1> [<key2> <value2> ...]");
+        }
+        
+        Map<String, Object> entries = new LinkedHashMap<>();
+        for (int i = 1; i < args.size(); i += 2) {
+            entries.put(args.get(i), args.get(i + 1));
+        }
+        try {
+            Cache.putAll(entries);
+        } catch (UncheckedIOException e) {
+            return new CommandResult(true, "Error saving to cache: " + e.getCause().getMessage());
+        }
+        return new CommandResult(false, "Values saved to cache: " + entries.size());
+    }
+    
     private CommandResult handleGet(List<String> args) {
         if (args.size() < 2) {
             return new CommandResult(true, "Not enough arguments. Usage: cache get <key>");
@@ -96,6 +213,49 @@ public class CacheCommand implements Command {
         return new CommandResult(false, key + " = " + value.toString());
     }
     
+    private CommandResult handleMultiGet(List<String> args) {
+        if (args.size() < 2) {
+            return new CommandResult(true, "Not enough arguments. Usage: cache mget <key1> [<key2> ...]");
+        }
+        
+        List<String> keys = args.subList(1, args.size());
+        Map<String, Object> values = Cache.getAll(keys);
+        StringBuilder result = new StringBuilder();
+        for (String key : keys) {
+            Object value = values.get(key);
+            result.append(key).append(" = ").append(value != null ? value : "(not found)").append("\n");
+        }
+        return new CommandResult(values.isEmpty(), result.toString().trim());
+    }
+    
+    private CommandResult handleImport(List<String> args) {
+        if (args.size() < 2) {
+            return new CommandResult(true, "Not enough arguments. Usage: cache import <file.json>");
+        }
+        
+        Path path = FileManager.resolvePath(args.get(1));
+        try {
+            int count = Cache.importFrom(path.toFile());
+            return new CommandResult(false, "Imported " + count + " entries from " + path);
+        } catch (IOException e) {
+            return new CommandResult(true, "Error importing cache: " + e.getMessage());
+        }
+    }
+    
+    private CommandResult handleExport(List<String> args) {
+        if (args.size() < 2) {
+            return new CommandResult(true, "Not enough arguments. Usage: cache export <file.json>");
+        }
+        
+        Path path = FileManager.resolvePath(args.get(1));
+        try {
+            int count = Cache.exportTo(path.toFile());
+            return new CommandResult(false, "Exported " + count + " entries to " + path);
+        } catch (IOException e) {
+            return new CommandResult(true, "Error exporting cache: " + e.getMessage());
+        }
+    }
+    
     private CommandResult handleRemove(List<String> args) {
         if (args.size() < 2) {
             return new CommandResult(true, "Not enough arguments. Usage: cache remove <key>");
@@ -117,20 +277,189 @@ public class CacheCommand implements Command {
         return new CommandResult(false, "Cache cleared. Entries removed: " + size);
     }
     
-    private CommandResult handleList() {
-        Map<String, Object> allEntries = Cache.getAll();
+    private CommandResult handleStats() {
+        Cache.Stats stats = Cache.getStats();
+        StringBuilder result = new StringBuilder();
+        result.append("Entries: ").append(stats.getEntries()).append("\n");
+        result.append("Hits: ").append(stats.getHits()).append(", misses: ").append(stats.getMisses())
+                .append(" (hit rate ").append(Math.round(stats.getHitRate() * 100)).append("%)\n");
+        result.append("Puts: ").append(stats.getPuts()).append(", removes: ").append(stats.getRemoves())
+                .append(", evictions: ").append(stats.getEvictions())
+                .append(", expirations: ").append(stats.getExpirations()).append("\n");
+        result.append("Flushes: ").append(stats.getFlushes()).append(", latency: last ")
+                .append(stats.getLastFlushMicros()).append(" us, avg ")
+                .append(stats.getAverageFlushMicros()).append(" us\n");
+        result.append("Size on disk: ").append(stats.getDiskBytes()).append(" bytes, estimated heap: ")
+                .append(stats.getHeapBytes()).append(" bytes");
+        return new CommandResult(false, result.toString());
+    }
+    
+    private CommandResult handleList(List<String> args, OutputSink sink) {
+        Page page = new Page();
+        String error = page.parse(args, true);
+        if (error != null) {
+            return new CommandResult(true, error + ". Usage: cache list [--prefix <prefix>] [--limit <n>] [--after <key>]");
+        }
+        return writePage("list", page, null, true, sink);
+    }
+    
+    private CommandResult handleKeys(List<String> args, OutputSink sink) {
+        Page page = new Page();
+        String error = page.parse(args, false);
+        if (error != null) {
+            return new CommandResult(true, error + ". Usage: cache keys [<pattern>] [--limit <n>] [--after <key>]");
+        }
         
-        if (allEntries.isEmpty()) {
-            return new CommandResult(false, "Cache is empty");
+        Pattern pattern = null;
+        if (page.pattern != null) {
+            // Only the keys starting with the text before the first wildcard are read
+            int wildcard = 0;
+            while (wildcard < page.pattern.length() && "*?".indexOf(page.pattern.charAt(wildcard)) < 0) {
+                wildcard++;
+            }
+            page.prefix = page.pattern.substring(0, wildcard);
+            if (wildcard < page.pattern.length()) {
+                pattern = compileGlob(page.pattern);
+            } else {
+                // No wildcard, the pattern is a single key
+                pattern = Pattern.compile(Pattern.quote(page.pattern));
+            }
+        }
+        return writePage("keys", page, pattern, false, sink);
+    }
+    
+    /**
+     * Compile a key pattern where * stands for any text and ? for a single character.
+     */
+    private static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+    
+    /**
+     * Stream one page of keys, in order, without copying the cache.
+     * 
+     * @param operation Operation name, for the command that shows the next page
+     * @param page Where to start and how many keys to show
+     * @param pattern Pattern the keys must match, or null for all keys with the prefix
+     * @param values Whether to show the values
+     * @param sink Sink receiving the lines
+     * @return Summary shown after the lines
+     */
+    private CommandResult writePage(String operation, Page page, Pattern pattern, boolean values, OutputSink sink) {
+        int shown = 0;
+        String last = null;
+        boolean more = false;
+        for (String key : Cache.keys(page.prefix, page.after)) {
+            if (pattern != null && !pattern.matcher(key).matches()) {
+                continue;
+            }
+            // Null if the key was removed or expired after it was indexed
+            Object value = Cache.peek(key);
+            if (value == null) {
+                continue;
+            }
+            if (shown == page.limit) {
+                more = true;
+                break;
+            }
+            sink.writeLine(values ? key + " = " + value : key);
+            shown++;
+            last = key;
         }
         
-        StringBuilder result = new StringBuilder();
-        result.append("Entries in cache (" + allEntries.size() + "):\n");
+        if (shown == 0) {
+            boolean filtered = !page.prefix.isEmpty() || pattern != null || page.after != null;
+            return new CommandResult(false, filtered ? "No matching entries" : "Cache is empty");
+        }
+        if (!more) {
+            return new CommandResult(false, "Entries shown: " + shown);
+        }
         
-        for (Map.Entry<String, Object> entry : allEntries.entrySet()) {
-            result.append(entry.getKey()).append(" = ").append(entry.getValue()).append("\n");
+        StringBuilder next = new StringBuilder("cache ").append(operation);
+        if (page.pattern != null) {
+            next.append(' ').append(quote(page.pattern));
+        } else if (!page.prefix.isEmpty()) {
+            next.append(" --prefix ").append(quote(page.prefix));
         }
+        if (page.limit != DEFAULT_PAGE_SIZE) {
+            next.append(" --limit ").append(page.limit);
+        }
+        next.append(" --after ").append(quote(last));
+        return new CommandResult(false, "Entries shown: " + shown + ". Next page: " + next);
+    }
+    
+    private static String quote(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || "'\"|$*?;&{}()\\".indexOf(c) >= 0) {
+                // The tokenizer unescapes backslashes inside quotes too
+                return "'" + text.replace("\\", "\\\\").replace("'", "'\\''") + "'";
+            }
+        }
+        return text;
+    }
+    
+    /**
+     * Options of a listing: which keys to show and how many.
+     */
+    private static final class Page {
+        private String prefix = "";
+        private String pattern;
+        private String after;
+        private int limit = DEFAULT_PAGE_SIZE;
         
-        return new CommandResult(false, result.toString().trim());
+        /**
+         * Parse the options following the operation name.
+         * 
+         * @param args Command arguments, starting with the operation
+         * @param prefixOption Whether --prefix is accepted; otherwise a single pattern is
+         * @return Error message, or null if the options are valid
+         */
+        String parse(List<String> args, boolean prefixOption) {
+            for (int i = 1; i < args.size(); i++) {
+                String arg = args.get(i);
+                boolean option = arg.equals("--limit") || arg.equals("--after")
+                        || (prefixOption && arg.equals("--prefix"));
+                if (option && i + 1 >= args.size()) {
+                    return "Missing value after " + arg;
+                }
+                if (arg.equals("--limit")) {
+                    try {
+                        limit = Integer.parseInt(args.get(++i));
+                    } catch (NumberFormatException e) {
+                        limit = 0;
+                    }
+                    if (limit <= 0) {
+                        return "Invalid limit: " + args.get(i);
+                    }
+                } else if (arg.equals("--after")) {
+                    after = args.get(++i);
+                } else if (option) {
+                    prefix = args.get(++i);
+                } else if (!prefixOption && pattern == null) {
+                    pattern = arg;
+                } else {
+                    return "Unexpected argument: " + arg;
+                }
+            }
+            return null;
+        }
     }
 }
\ No newline at end of file
@@ -1,12 +1,12 @@
 package command.impl;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
 import command.Command;
 import command.CommandAlias;
 import command.CommandResult;
+import commandUtils.DirectoryCache;
 import commandUtils.FileManager;
 import commandUtils.VariableManager;
 
@@ -39,17 +39,26 @@ public class Cd implements Command {
         Path newDir = FileManager.resolvePath(pathStr);
         
         // Check if it's a directory
-        if (!Files.isDirectory(newDir)) {
+        if (!DirectoryCache.getInstance().isDirectory(newDir)) {
             return CommandResult.error("Not a directory: " + newDir);
         }
         
         // Change directory
+        if (FileManager.isCurrentDirectoryFrozen()) {
+            return CommandResult.error("Cannot change directory while commands run in parallel.");
+        }
         if (!FileManager.setCurrentDirectory(newDir)) {
             return CommandResult.error("Failed to change directory.");
         }
         return CommandResult.success(null);
     }
     
+    @Override
+    public boolean changesWorkingDirectory(List<String> args) {
+        // Without arguments cd only prints the current directory
+        return !args.isEmpty();
+    }
+    
     @Override
     public String getName() {
         return "cd";
@@ -0,0 +1,110 @@
+package command.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import command.CollectingSink;
+import command.Command;
+import command.CommandAlias;
+import command.CommandInput;
+import command.CommandResult;
+import command.OutputSink;
+import commandUtils.FileManager;
+import commandUtils.VariableManager;
+
+/**
+ * Command to count the lines, words or characters of its input or a file.
+ */
+@CommandAlias({"count", "wc"})
+public class Count implements Command {
+    
+    @Override
+    public CommandResult execute(List<String> args) {
+        return CollectingSink.execute(this, args);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, OutputSink sink) {
+        return execute(args, null, sink);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, CommandInput input, OutputSink sink) {
+        String mode = "-l";
+        String file = null;
+        
+        for (String arg : args) {
+            if (arg.equals("-l") || arg.equals("-w") || arg.equals("-c")) {
+                mode = arg;
+            } else {
+                file = arg;
+            }
+        }
+        
+        long count = 0;
+        
+        try {
+            if (file != null) {
+                Path filePath = FileManager.resolvePath(VariableManager.processVariables(file));
+                if (!FileManager.fileExists(filePath)) {
+                    return CommandResult.error("File not found: " + filePath);
+                }
+                
+                try (BufferedReader reader = FileManager.openReader(filePath)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        count += measure(line, mode);
+                    }
+                }
+            } else if (input != null) {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    count += measure(line, mode);
+                }
+            } else {
+                return CommandResult.error("No input. Use a file or a pipeline, e.g. read app.log | count");
+            }
+        } catch (IOException e) {
+            return CommandResult.error("Error reading file: " + e.getMessage());
+        }
+        
+        if (Thread.currentThread().isInterrupted()) {
+            return CommandResult.error("Counting interrupted.");
+        }
+        
+        return CommandResult.success(String.valueOf(count));
+    }
+    
+    /**
+     * Get the amount a line contributes to the count.
+     */
+    private long measure(String line, String mode) {
+        switch (mode) {
+            case "-w":
+                String trimmed = line.trim();
+                return trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length;
+            case "-c":
+                // Include the line separator like wc does
+                return line.length() + 1;
+            default:
+                return 1;
+        }
+    }
+    
+    @Override
+    public String getName() {
+        return "count";
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Counts lines, words or characters";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "count [-l|-w|-c] [file]";
+    }
+}
@@ -4,9 +4,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import command.CollectingSink;
 import command.Command;
 import command.CommandAlias;
 import command.CommandResult;
+import command.OutputSink;
 
 /**
  * Command for working with environment variables.
@@ -36,15 +38,20 @@ public class Env implements Command {
     
     @Override
     public CommandResult execute(List<String> args) {
+        return CollectingSink.execute(this, args);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, OutputSink sink) {
         if (args.isEmpty()) {
-            return listEnvironmentVars();
+            return listEnvironmentVars(sink);
         }
         
         String subCommand = args.get(0).toLowerCase();
         
         switch (subCommand) {
             case "list":
-                return listEnvironmentVars();
+                return listEnvironmentVars(sink);
             case "get":
                 if (args.size() < 2) {
                     return new CommandResult(true, "Specify the variable name. Usage: env get <name>");
@@ -73,20 +80,19 @@ public class Env implements Command {
     /**
      * Displays a list of all environment variables
      */
-    private CommandResult listEnvironmentVars() {
+    private CommandResult listEnvironmentVars(OutputSink sink) {
         Map<String, String> env = System.getenv();
         if (env.isEmpty()) {
             return new CommandResult(false, "No environment variables found");
         }
         
-        StringBuilder result = new StringBuilder();
-        result.append("Environment variables:\n");
+        sink.writeLine("Environment variables:");
         
         for (Entry<String, String> entry : env.entrySet()) {
-            result.append(entry.getKey()).append("=").append(entry.getValue()).append("\n");
+            sink.writeLine(entry.getKey() + "=" + entry.getValue());
         }
         
-        return new CommandResult(false, result.toString().trim());
+        return new CommandResult(false, "");
     }
     
     /**
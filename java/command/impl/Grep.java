@@ -0,0 +1,124 @@
+package command.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import command.CollectingSink;
+import command.Command;
+import command.CommandAlias;
+import command.CommandInput;
+import command.CommandResult;
+import command.OutputSink;
+import commandUtils.FileManager;
+import commandUtils.VariableManager;
+
+/**
+ * Command to print the lines of its input or a file that match a pattern.
+ */
+@CommandAlias({"grep"})
+public class Grep implements Command {
+    
+    @Override
+    public CommandResult execute(List<String> args) {
+        return CollectingSink.execute(this, args);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, OutputSink sink) {
+        return execute(args, null, sink);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, CommandInput input, OutputSink sink) {
+        boolean ignoreCase = false;
+        boolean invert = false;
+        List<String> operands = new ArrayList<>();
+        
+        for (String arg : args) {
+            if (arg.equals("-i")) {
+                ignoreCase = true;
+            } else if (arg.equals("-v")) {
+                invert = true;
+            } else {
+                operands.add(arg);
+            }
+        }
+        
+        if (operands.isEmpty()) {
+            return CommandResult.error("Usage: " + getUsage());
+        }
+        
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(operands.get(0), ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+        } catch (PatternSyntaxException e) {
+            return CommandResult.error("Invalid pattern: " + e.getDescription());
+        }
+        
+        // Read from the file if one is given, otherwise from the pipeline input
+        if (operands.size() > 1) {
+            Path filePath = FileManager.resolvePath(VariableManager.processVariables(operands.get(1)));
+            if (!FileManager.fileExists(filePath)) {
+                return CommandResult.error("File not found: " + filePath);
+            }
+            
+            try (BufferedReader reader = FileManager.openReader(filePath)) {
+                return filter(reader::readLine, pattern, invert, sink);
+            } catch (IOException e) {
+                return CommandResult.error("Error reading file: " + e.getMessage());
+            }
+        }
+        
+        if (input == null) {
+            return CommandResult.error("No input. Use a file or a pipeline, e.g. read app.log | grep ERROR");
+        }
+        
+        try {
+            return filter(input::readLine, pattern, invert, sink);
+        } catch (IOException e) {
+            return CommandResult.error("Error reading input: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Source of lines that may fail with an I/O error.
+     */
+    private interface LineSource {
+        String readLine() throws IOException;
+    }
+    
+    private CommandResult filter(LineSource source, Pattern pattern, boolean invert, OutputSink sink)
+            throws IOException {
+        String line;
+        while ((line = source.readLine()) != null) {
+            if (Thread.currentThread().isInterrupted()) {
+                return CommandResult.error("Search interrupted.");
+            }
+            
+            if (pattern.matcher(line).find() != invert) {
+                sink.writeLine(line);
+            }
+        }
+        return CommandResult.success("");
+    }
+    
+    @Override
+    public String getName() {
+        return "grep";
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Prints lines matching a regular expression";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "grep [-i] [-v] <pattern> [file]";
+    }
+}
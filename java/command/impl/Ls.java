@@ -1,75 +1,272 @@
 package command.impl;
 
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
-import java.util.Collections;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
+import command.CollectingSink;
 import command.Command;
 import command.CommandAlias;
 import command.CommandResult;
+import command.OutputSink;
+import commandUtils.DirectoryCache;
+import commandUtils.FileEntry;
 import commandUtils.FileManager;
 import commandUtils.VariableManager;
 
 /**
  * Command to list files in a directory.
+ * With -l every entry is shown with its permissions, size and modification time,
+ * read in one call per entry. With -R the subdirectories are listed too; they are
+ * read in parallel while the listings are shown in order. Listings come from the
+ * shared {@link DirectoryCache}.
  */
 @CommandAlias({"dir", "ls"})
 public class Ls implements Command {
+    private static final int WIDTH = 80;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+        .withZone(ZoneId.systemDefault());
+    private static final Comparator<FileEntry> BY_NAME = Comparator.comparing(FileEntry::getDisplayName);
+    // Largest and newest first, like ls -S and ls -t
+    private static final Comparator<FileEntry> BY_SIZE = Comparator.comparingLong(FileEntry::getSize).reversed()
+        .thenComparing(BY_NAME);
+    private static final Comparator<FileEntry> BY_TIME = Comparator.comparingLong(FileEntry::getLastModified)
+        .reversed().thenComparing(BY_NAME);
     
     @Override
     public CommandResult execute(List<String> args) {
-        Path directory;
+        return CollectingSink.execute(this, args);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, OutputSink sink) {
+        String pathStr = null;
+        boolean longFormat = false;
+        boolean recursive = false;
+        Comparator<FileEntry> order = BY_NAME;
+        
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("--sort")) {
+                String key = i + 1 < args.size() ? args.get(++i) : "";
+                if (key.equals("name")) {
+                    order = BY_NAME;
+                } else if (key.equals("size")) {
+                    order = BY_SIZE;
+                } else if (key.equals("time")) {
+                    order = BY_TIME;
+                } else {
+                    return CommandResult.error("Invalid sort key: " + key + " (use name, size or time)");
+                }
+            } else if (arg.length() > 1 && arg.startsWith("-") && arg.chars().skip(1).allMatch(c -> c == 'l' || c == 'R')) {
+                // Combined flags such as -lR
+                longFormat |= arg.indexOf('l') > 0;
+                recursive |= arg.indexOf('R') > 0;
+            } else if (pathStr == null) {
+                pathStr = arg;
+            } else {
+                return CommandResult.error("Unexpected argument: " + arg + ". Usage: " + getUsage());
+            }
+        }
         
-        if (args.isEmpty()) {
+        Path directory;
+        if (pathStr == null) {
             // List current directory if no args
             directory = FileManager.getCurrentDirectory();
         } else {
-            String pathStr = args.get(0);
-            
-            // Process variables in the path
-            pathStr = VariableManager.processVariables(pathStr);
-            
-            // Resolve the path
-            directory = FileManager.resolvePath(pathStr);
+            // Process variables in the path and resolve it
+            directory = FileManager.resolvePath(VariableManager.processVariables(pathStr));
+        }
+        
+        if (!recursive) {
+            try {
+                List<FileEntry> entries = DirectoryCache.getInstance().list(directory);
+                if (entries.isEmpty()) {
+                    return CommandResult.success("Directory is empty.");
+                }
+                entries.sort(order);
+                sink.writeLine("Directory: " + directory + "\n");
+                return write(entries, longFormat, sink);
+            } catch (NoSuchFileException e) {
+                return CommandResult.error("Directory not found: " + directory);
+            } catch (NotDirectoryException e) {
+                return CommandResult.error("Not a directory: " + directory);
+            } catch (IOException e) {
+                return CommandResult.error("Error listing directory: " + e.getMessage());
+            }
         }
         
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors() * 2);
         try {
-            List<String> entries = FileManager.listDirectory(directory);
-            
-            if (entries.isEmpty()) {
-                return CommandResult.success("Directory is empty.");
+            return writeTree(pool.submit(new Listing(directory, order)), longFormat, sink);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Show the listings of a directory tree in depth-first order, each as soon as
+     * it is read; the directories after it are read meanwhile.
+     */
+    private CommandResult writeTree(ForkJoinTask<Listing> root, boolean longFormat, OutputSink sink) {
+        List<ForkJoinTask<Listing>> stack = new ArrayList<>();
+        stack.add(root);
+        int errors = 0;
+        while (!stack.isEmpty()) {
+            Listing listing;
+            try {
+                listing = stack.remove(stack.size() - 1).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return CommandResult.error("Listing interrupted.");
+            } catch (ExecutionException e) {
+                return CommandResult.error("Error listing directory: " + e.getCause().getMessage());
             }
             
-            // Sort entries alphabetically
-            Collections.sort(entries);
-            
-            StringBuilder result = new StringBuilder();
-            result.append("Directory: ").append(directory).append("\n\n");
-            
-            // Format entries in columns
-            int maxLength = 0;
-            for (String entry : entries) {
-                maxLength = Math.max(maxLength, entry.length());
+            sink.writeLine("Directory: " + listing.directory + "\n");
+            if (listing.error != null) {
+                sink.writeError("Error listing directory: " + listing.error.getMessage() + "\n\n");
+                errors++;
+                continue;
+            }
+            if (listing.entries.isEmpty()) {
+                sink.writeLine("Directory is empty.\n");
+            } else {
+                CommandResult result = write(listing.entries, longFormat, sink);
+                if (result.isError()) {
+                    return result;
+                }
+                sink.writeLine("");
+            }
+            for (int i = listing.subdirectories.size() - 1; i >= 0; i--) {
+                stack.add(listing.subdirectories.get(i));
+            }
+        }
+        return errors == 0 ? CommandResult.success("") : CommandResult.error("Directories that could not be listed: " + errors);
+    }
+    
+    /**
+     * Show sorted entries in columns, or one per line in long format.
+     */
+    private CommandResult write(List<FileEntry> entries, boolean longFormat, OutputSink sink) {
+        return longFormat ? writeLong(entries, sink) : writeColumns(entries, sink);
+    }
+    
+    private CommandResult writeColumns(List<FileEntry> entries, OutputSink sink) {
+        List<String> names = new ArrayList<>(entries.size());
+        int maxLength = 0;
+        for (FileEntry entry : entries) {
+            String name = entry.getDisplayName();
+            names.add(name);
+            maxLength = Math.max(maxLength, name.length());
+        }
+        
+        int columnWidth = maxLength + 2;
+        int columns = Math.max(1, WIDTH / columnWidth);
+        int rows = (names.size() + columns - 1) / columns;
+        
+        // Emit the listing row by row
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return CommandResult.error("Listing interrupted.");
             }
             
-            int columns = Math.max(1, 80 / (maxLength + 2));
-            int rows = (int) Math.ceil((double) entries.size() / columns);
-            
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < columns; j++) {
-                    int index = i + j * rows;
-                    if (index < entries.size()) {
-                        String entry = entries.get(index);
-                        result.append(String.format("%-" + (maxLength + 2) + "s", entry));
-                    }
+            row.setLength(0);
+            for (int j = 0; j < columns; j++) {
+                int index = i + j * rows;
+                if (index < names.size()) {
+                    String name = names.get(index);
+                    row.append(name);
+                    pad(row, columnWidth - name.length());
                 }
-                result.append("\n");
+            }
+            sink.writeLine(row.toString());
+        }
+        return CommandResult.success("");
+    }
+    
+    private CommandResult writeLong(List<FileEntry> entries, OutputSink sink) {
+        int sizeWidth = 1;
+        for (FileEntry entry : entries) {
+            sizeWidth = Math.max(sizeWidth, digits(entry.getSize()));
+        }
+        
+        StringBuilder line = new StringBuilder();
+        for (FileEntry entry : entries) {
+            if (Thread.currentThread().isInterrupted()) {
+                return CommandResult.error("Listing interrupted.");
             }
             
-            return CommandResult.success(result.toString());
-        } catch (IOException e) {
-            return CommandResult.error("Error listing directory: " + e.getMessage());
+            line.setLength(0);
+            line.append(entry.getPermissions()).append("  ");
+            pad(line, sizeWidth - digits(entry.getSize()));
+            line.append(entry.getSize()).append("  ");
+            TIME_FORMAT.formatTo(Instant.ofEpochMilli(entry.getLastModified()), line);
+            line.append("  ").append(entry.getDisplayName());
+            sink.writeLine(line.toString());
+        }
+        return CommandResult.success("");
+    }
+    
+    private static void pad(StringBuilder text, int count) {
+        for (int i = 0; i < count; i++) {
+            text.append(' ');
+        }
+    }
+    
+    private static int digits(long value) {
+        int digits = 1;
+        for (long rest = value; rest >= 10 || rest <= -10; rest /= 10) {
+            digits++;
+        }
+        return value < 0 ? digits + 1 : digits;
+    }
+    
+    /**
+     * Reads a directory and starts reading its subdirectories.
+     */
+    private static final class Listing extends RecursiveTask<Listing> {
+        private static final long serialVersionUID = 1L;
+        
+        private final Path directory;
+        private final Comparator<FileEntry> order;
+        private List<FileEntry> entries;
+        private final List<ForkJoinTask<Listing>> subdirectories = new ArrayList<>();
+        private IOException error;
+        
+        Listing(Path directory, Comparator<FileEntry> order) {
+            this.directory = directory;
+            this.order = order;
+        }
+        
+        @Override
+        protected Listing compute() {
+            try {
+                entries = DirectoryCache.getInstance().list(directory);
+            } catch (IOException e) {
+                error = e;
+                return this;
+            }
+            entries.sort(order);
+            for (FileEntry entry : entries) {
+                // Links are not followed, they could lead into a cycle
+                if (entry.isDirectory() && !entry.isSymbolicLink()) {
+                    subdirectories.add(new Listing(directory.resolve(entry.getName()), order).fork());
+                }
+            }
+            return this;
         }
     }
     
@@ -85,6 +282,6 @@ public class Ls implements Command {
     
     @Override
     public String getUsage() {
-        return "ls [directory]";
+        return "ls [-l] [-R] [--sort name|size|time] [directory]";
     }
 }
@@ -1,30 +1,102 @@
 package command.impl;
 
 import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
+import command.CollectingSink;
 import command.Command;
 import command.CommandAlias;
 import command.CommandResult;
+import command.OutputSink;
+import commandUtils.FileFollower;
 import commandUtils.FileManager;
+import commandUtils.MappedLineReader;
 import commandUtils.VariableManager;
 
 /**
- * Command to read the contents of a file.
+ * Command to read the contents of a file, or a range of its lines.
+ * The file is read through memory-mapped windows, so files of any size can be
+ * shown; the last lines are found by scanning backwards from the end.
+ * With -f the command keeps showing the lines appended to the file, like tail -f,
+ * until it is interrupted.
  */
 @CommandAlias({"read"})
 public class ReadFile implements Command {
+    private static final long DEFAULT_FOLLOW_LINES = 10;
     
     @Override
     public CommandResult execute(List<String> args) {
-        if (args.isEmpty()) {
-            return CommandResult.error("Usage: " + getUsage());
+        return CollectingSink.execute(this, args);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, OutputSink sink) {
+        String pathStr = null;
+        boolean showLineNumbers = false;
+        boolean follow = false;
+        long head = -1;
+        long tail = -1;
+        long first = 1;
+        long last = Long.MAX_VALUE;
+        boolean range = false;
+        
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("-n")) {
+                showLineNumbers = true;
+            } else if (arg.equals("-f")) {
+                follow = true;
+            } else if (arg.equals("--head") || arg.equals("--tail") || arg.equals("--range")) {
+                if (i + 1 >= args.size()) {
+                    return CommandResult.error("Missing value after " + arg + ". Usage: " + getUsage());
+                }
+                String value = args.get(++i);
+                if (arg.equals("--range")) {
+                    // a:b, a: or :b, line numbers starting at 1
+                    int colon = value.indexOf(':');
+                    long from = colon < 0 ? -1 : parseCount(colon == 0 ? "1" : value.substring(0, colon));
+                    long to = colon < 0 ? -1
+                            : colon == value.length() - 1 ? Long.MAX_VALUE : parseCount(value.substring(colon + 1));
+                    if (from < 1 || to < from) {
+                        return CommandResult.error("Invalid range: " + value + " (use e.g. 100:200, 100: or :200)");
+                    }
+                    first = from;
+                    last = to;
+                    range = true;
+                } else {
+                    long count = parseCount(value);
+                    if (count < 0) {
+                        return CommandResult.error("Invalid line count: " + value);
+                    }
+                    if (arg.equals("--head")) {
+                        head = count;
+                    } else {
+                        tail = count;
+                    }
+                }
+            } else if (pathStr == null) {
+                pathStr = arg;
+            } else {
+                return CommandResult.error("Unexpected argument: " + arg + ". Usage: " + getUsage());
+            }
         }
         
-        String pathStr = args.get(0);
+        if (pathStr == null) {
+            return CommandResult.error("Usage: " + getUsage());
+        }
+        if ((head >= 0 ? 1 : 0) + (tail >= 0 ? 1 : 0) + (range ? 1 : 0) > 1) {
+            return CommandResult.error("Use only one of --head, --tail and --range");
+        }
+        if (follow && (head >= 0 || range)) {
+            return CommandResult.error("Use -f alone or with --tail");
+        }
+        if (follow && tail < 0) {
+            // Like tail -f, start with the last lines
+            tail = DEFAULT_FOLLOW_LINES;
+        }
         
         // Process variables in the path
         pathStr = VariableManager.processVariables(pathStr);
@@ -35,24 +107,106 @@ public class ReadFile implements Command {
         if (!FileManager.fileExists(filePath)) {
             return CommandResult.error("File not found: " + filePath);
         }
+        if (Files.isDirectory(filePath)) {
+            return CommandResult.error("Not a file: " + filePath);
+        }
+        if (head >= 0) {
+            last = head;
+        }
         
-        try {
-            List<String> lines = FileManager.readFile(filePath);
-            
-            // Add line numbers if requested
-            boolean showLineNumbers = args.contains("-n");
-            if (showLineNumbers) {
-                AtomicInteger lineNumber = new AtomicInteger(1);
-                List<String> numberedLines = lines.stream()
-                    .map(line -> String.format("%4d | %s", lineNumber.getAndIncrement(), line))
-                    .collect(Collectors.toList());
-                lines = numberedLines;
+        StringBuilder text = new StringBuilder();
+        boolean numbered = showLineNumbers;
+        // Number of the last line shown, continued while following
+        long[] shown = {0};
+        MappedLineReader.LineConsumer consumer = (number, line) -> {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
             }
-            
-            return CommandResult.success(String.join("\n", lines));
-        } catch (IOException e) {
+            shown[0] = number;
+            if (numbered) {
+                text.setLength(0);
+                appendLineNumber(text, number);
+                sink.writeLine(text.append(line).toString());
+            } else {
+                sink.writeLine(line);
+            }
+            return true;
+        };
+        
+        // Map the file in windows, so that only the lines shown are decoded and memory stays flat
+        long end;
+        try (MappedLineReader reader = new MappedLineReader(filePath)) {
+            // A partial last line is shown by following once it is complete
+            end = follow ? reader.excludePartialLine() : reader.size();
+            if (tail >= 0) {
+                reader.readTail(tail, showLineNumbers, consumer);
+            } else if (last >= first) {
+                reader.readLines(first, last, consumer);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
             return CommandResult.error("Error reading file: " + e.getMessage());
         }
+        
+        if (follow && !Thread.currentThread().isInterrupted()) {
+            return follow(filePath, end, shown[0], consumer, sink);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            return CommandResult.error("Reading interrupted.");
+        }
+        return CommandResult.success("");
+    }
+    
+    /**
+     * Show the lines appended to a file until the command is interrupted with Ctrl+C.
+     * 
+     * @param filePath File to follow
+     * @param position Size of the part of the file already shown
+     * @param lastNumber Number of the last line shown
+     * @param consumer Shows the lines
+     * @param sink Sink receiving notices about rotation and truncation
+     */
+    private CommandResult follow(Path filePath, long position, long lastNumber,
+            MappedLineReader.LineConsumer consumer, OutputSink sink) {
+        long[] number = {lastNumber};
+        try (FileFollower follower = new FileFollower(filePath, position)) {
+            follower.follow(line -> consumer.accept(++number[0], line), notice -> {
+                number[0] = 0;
+                sink.writeError(notice + "\n");
+            });
+        } catch (InterruptedException | ClosedByInterruptException e) {
+            // Ctrl+C ends following, which is the normal way to stop. During a read
+            // it closes the file and arrives as a ClosedByInterruptException instead
+            Thread.currentThread().interrupt();
+            return CommandResult.success("");
+        } catch (IOException e) {
+            return CommandResult.error("Error following file: " + e.getMessage());
+        }
+        return CommandResult.success("");
+    }
+    
+    /**
+     * Parse a non-negative line count.
+     * 
+     * @return The count, or -1 if the text is not a valid count
+     */
+    private static long parseCount(String text) {
+        try {
+            long count = Long.parseLong(text);
+            return count >= 0 ? count : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Append a line number right-aligned to four columns, followed by the separator.
+     */
+    private static void appendLineNumber(StringBuilder text, long number) {
+        String digits = Long.toString(number);
+        for (int i = digits.length(); i < 4; i++) {
+            text.append(' ');
+        }
+        text.append(digits).append(" | ");
     }
     
     @Override
@@ -67,6 +221,6 @@ public class ReadFile implements Command {
     
     @Override
     public String getUsage() {
-        return "read <file_path> [-n]";
+        return "read <file_path> [-n] [--head <n> | --tail <n> | --range <first>:<last>] [-f]";
     }
 }
\ No newline at end of file
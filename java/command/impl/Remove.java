@@ -1,27 +1,40 @@
 package command.impl;
 
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.util.List;
 
+import command.CollectingSink;
 import command.Command;
 import command.CommandAlias;
 import command.CommandResult;
+import command.OutputSink;
 import commandUtils.FileManager;
+import commandUtils.TreeDeleter;
 import commandUtils.VariableManager;
 
 /**
  * Command to remove files or directories.
+ * Directory trees are deleted in parallel, with progress reported every second
+ * and every entry that could not be deleted listed with the reason.
  */
 @CommandAlias({"rm", "remove", "delete", "del"})
 public class Remove implements Command {
     @Override
     public CommandResult execute(List<String> args) {
+        return CollectingSink.execute(this, args);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, OutputSink sink) {
         if (args.isEmpty()) {
             return new CommandResult(true, "Usage: " + getUsage());
         }
         
-        StringBuilder resultBuilder = new StringBuilder();
-        boolean allSuccessful = true;
+        long start = System.nanoTime();
+        long deleted = 0;
+        int failed = 0;
         
         for (String pathStr : args) {
             // Process variables in the path
@@ -30,25 +43,41 @@ public class Remove implements Command {
             // Resolve the path
             Path path = FileManager.resolvePath(pathStr);
             
-            if (!FileManager.fileExists(path)) {
-                resultBuilder.append("File or directory does not exist: ").append(path).append("\n");
-                allSuccessful = false;
+            if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                sink.writeError("File or directory does not exist: " + path + "\n");
+                failed++;
                 continue;
             }
             
-            boolean isSuccess = FileManager.delete(path);
+            TreeDeleter deleter = new TreeDeleter();
+            long done = deleted;
+            try {
+                deleter.delete(path, count -> sink.writeLine("Deleted " + (done + count) + " entries ("
+                        + rate(done + count, start) + " entries/s)"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new CommandResult(true, "Deletion interrupted after " + (deleted + deleter.getDeleted())
+                        + " entries.");
+            }
+            deleted += deleter.getDeleted();
             
-            if (!isSuccess) {
-                resultBuilder.append("Failed to delete: ").append(path).append("\n");
-                allSuccessful = false;
+            for (String failure : deleter.getFailures()) {
+                sink.writeError("Failed to delete " + failure + "\n");
+                failed++;
             }
         }
         
-        if (allSuccessful) {
-            return new CommandResult(false, "Deletion completed successfully.");
-        } else {
-            return new CommandResult(true, resultBuilder.toString().trim());
+        String summary = "Deleted " + deleted + " entries in " + (System.nanoTime() - start) / 1_000_000 + " ms ("
+                + rate(deleted, start) + " entries/s)";
+        if (failed == 0) {
+            return new CommandResult(false, "Deletion completed successfully. " + summary + ".");
         }
+        return new CommandResult(true, summary + ", " + failed + (failed == 1 ? " failure." : " failures."));
+    }
+    
+    private static long rate(long count, long start) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        return count * 1_000_000_000L / elapsedNanos;
     }
     
     @Override
@@ -1,16 +1,19 @@
 package command.impl;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.List;
 
+import command.CollectingSink;
 import command.Command;
 import command.CommandAlias;
 import command.CommandExecutor;
 import command.CommandParser;
 import command.CommandResult;
+import command.OutputSink;
 import command.ParsedCommand;
+import command.PipelineExecutor;
 import commandUtils.FileManager;
 import commandUtils.VariableManager;
 
@@ -23,25 +26,33 @@ public class Script implements Command {
     private CommandParser commandParser;
     
     /**
-     * Default constructor used by reflection.
-     * The CommandExecutor will be set after instantiation.
+     * Default constructor used by the command registry.
+     * Commands are executed through an executor backed by the shared registry.
      */
     public Script() {
+        this.commandExecutor = new CommandExecutor();
         this.commandParser = new CommandParser();
+        this.commandParser.setCommandExecutor(commandExecutor);
     }
     
     /**
      * Set the command executor reference.
-     * This is called by the CommandExecutor after instantiating this command.
+     * Replaces the default executor, e.g. to run the script with a different executor.
      * 
      * @param commandExecutor Reference to the command executor
      */
     public void setCommandExecutor(CommandExecutor commandExecutor) {
         this.commandExecutor = commandExecutor;
+        this.commandParser.setCommandExecutor(commandExecutor);
     }
     
     @Override
     public CommandResult execute(List<String> args) {
+        return CollectingSink.execute(this, args);
+    }
+    
+    @Override
+    public CommandResult execute(List<String> args, OutputSink sink) {
         if (commandExecutor == null) {
             return new CommandResult(true, "Script has not been initialized correctly.");
         }
@@ -63,37 +74,49 @@ public class Script implements Command {
             return new CommandResult(true, "Script file not found: " + scriptPath);
         }
         
-        try {
-            // Read the script file
-            List<String> scriptLines = FileManager.readFile(scriptPath);
-            List<String> results = new ArrayList<>();
-            
-            // Execute each line of the script
-            for (String line : scriptLines) {
+        ScriptSink scriptSink = new ScriptSink(sink);
+        
+        // Read the script file line by line, output of each command is streamed as it runs
+        try (BufferedReader reader = FileManager.openReader(scriptPath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Stop when the script is interrupted (Ctrl+C)
+                if (Thread.currentThread().isInterrupted()) {
+                    return new CommandResult(true, "Script interrupted.");
+                }
+                
                 // Skip empty lines and comments
                 line = line.trim();
                 if (line.isEmpty() || line.startsWith("#")) {
                     continue;
                 }
                 
-                // Parse the command
-                ParsedCommand parsedCommand = commandParser.parse(line);
-                if (parsedCommand != null) {
+                // Parse the commands and pipelines of the line
+                for (String command : commandParser.splitCommands(line)) {
+                    List<ParsedCommand> stages = commandParser.parsePipeline(command);
+                    if (stages.isEmpty()) {
+                        continue;
+                    }
+                    
                     // Execute the command
-                    CommandResult result = commandExecutor.execute(parsedCommand, null);
+                    CommandResult result = new PipelineExecutor(commandExecutor).execute(stages, null, scriptSink);
                     
-                    // If there's output, add it to the results
-                    if (result != null && !result.getOutput().isEmpty()) {
-                        results.add(result.getOutput());
+                    // If there's output, add it to the script output
+                    if (result != null && result.hasOutput()) {
+                        if (result.isError()) {
+                            scriptSink.writeError(result.getOutput() + "\n");
+                        } else {
+                            scriptSink.writeLine(result.getOutput());
+                        }
                     }
                 }
             }
             
             // Return the script execution results
-            if (results.isEmpty()) {
+            if (!scriptSink.hasOutput) {
                 return new CommandResult(false, "Script executed successfully with no output.");
             } else {
-                return new CommandResult(false, String.join("\n", results));
+                return new CommandResult(false, "");
             }
             
         } catch (IOException e) {
@@ -101,6 +124,30 @@ public class Script implements Command {
         }
     }
     
+    /**
+     * Forwards output of the script commands and remembers whether any was produced.
+     */
+    private static class ScriptSink implements OutputSink {
+        private final OutputSink target;
+        private boolean hasOutput = false;
+        
+        ScriptSink(OutputSink target) {
+            this.target = target;
+        }
+        
+        @Override
+        public void write(String text) {
+            hasOutput |= !text.isEmpty();
+            target.write(text);
+        }
+        
+        @Override
+        public void writeError(String text) {
+            hasOutput |= !text.isEmpty();
+            target.writeError(text);
+        }
+    }
+    
     @Override
     public String getName() {
         return "script";
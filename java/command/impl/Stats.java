@@ -0,0 +1,56 @@
+package command.impl;
+
+import java.util.List;
+import java.util.Map;
+
+import command.Command;
+import command.CommandAlias;
+import command.CommandResult;
+import command.StatsRegistry;
+
+/**
+ * Command to show runtime statistics such as parse cache hits and rendering counters.
+ */
+@CommandAlias({"stats"})
+public class Stats implements Command {
+    
+    @Override
+    public CommandResult execute(List<String> args) {
+        Map<String, String> stats = StatsRegistry.snapshot();
+        
+        if (!args.isEmpty()) {
+            String name = String.join(" ", args);
+            String value = stats.get(name);
+            if (value == null) {
+                return CommandResult.error("Unknown statistics: " + name + ". Available: "
+                    + String.join(", ", stats.keySet()));
+            }
+            return CommandResult.success(name + ": " + value);
+        }
+        
+        if (stats.isEmpty()) {
+            return CommandResult.success("No statistics available");
+        }
+        
+        StringBuilder output = new StringBuilder();
+        for (Map.Entry<String, String> entry : stats.entrySet()) {
+            output.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        return CommandResult.success(output.toString().trim());
+    }
+    
+    @Override
+    public String getName() {
+        return "stats";
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Shows runtime statistics";
+    }
+    
+    @Override
+    public String getUsage() {
+        return "stats [section]";
+    }
+}
@@ -0,0 +1,186 @@
+package command.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Annotation processor that generates the command index at build time.
+ * Every public, non-abstract {@code Command} implementation in the command package
+ * is written into {@code command.GeneratedCommandIndex} together with its
+ * {@code @CommandAlias} values, so no classpath scan is needed at startup.
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(CommandIndexProcessor.PACKAGE_OPTION)
+public class CommandIndexProcessor extends AbstractProcessor {
+    static final String PACKAGE_OPTION = "commandIndex.package";
+
+    private static final String DEFAULT_PACKAGE = "command.impl";
+    private static final String COMMAND_INTERFACE = "command.Command";
+    private static final String ALIAS_ANNOTATION = "command.CommandAlias";
+    private static final String INDEX_PACKAGE = "command";
+    private static final String INDEX_CLASS = "GeneratedCommandIndex";
+
+    // Class name -> aliases, sorted so the generated source is stable between builds
+    private final Map<String, List<String>> commands = new TreeMap<>();
+    private boolean generated = false;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (generated) {
+            return false;
+        }
+
+        TypeElement commandType = processingEnv.getElementUtils().getTypeElement(COMMAND_INTERFACE);
+        if (commandType == null) {
+            return false;
+        }
+
+        String targetPackage = processingEnv.getOptions().getOrDefault(PACKAGE_OPTION, DEFAULT_PACKAGE);
+
+        for (Element element : roundEnv.getRootElements()) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+            if (!packageName.equals(targetPackage) || !isInstantiableCommand(type, commandType.asType())) {
+                continue;
+            }
+
+            commands.put(type.getQualifiedName().toString(), getAliases(type));
+        }
+
+        // All project sources are available in the first round, write the index right away
+        // so the generated class is compiled together with the rest of the project
+        if (!commands.isEmpty()) {
+            writeIndex();
+            generated = true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Check that the type can be created through a public no-argument constructor
+     * and implements the Command interface.
+     */
+    private boolean isInstantiableCommand(TypeElement type, TypeMirror commandType) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+
+        if (!processingEnv.getTypeUtils().isAssignable(type.asType(), commandType)) {
+            return false;
+        }
+
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                "Command has no public no-argument constructor and is not indexed", type);
+        return false;
+    }
+
+    /**
+     * Read the values of the CommandAlias annotation without loading the annotation class.
+     */
+    private List<String> getAliases(TypeElement type) {
+        List<String> aliases = new ArrayList<>();
+
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!annotationType.getQualifiedName().contentEquals(ALIAS_ANNOTATION)) {
+                continue;
+            }
+
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues()
+                    .entrySet()) {
+                if (!entry.getKey().getSimpleName().contentEquals("value")) {
+                    continue;
+                }
+
+                Object value = entry.getValue().getValue();
+                if (value instanceof List) {
+                    for (Object item : (List<?>) value) {
+                        aliases.add(((AnnotationValue) item).getValue().toString());
+                    }
+                } else {
+                    aliases.add(value.toString());
+                }
+            }
+        }
+
+        return aliases;
+    }
+
+    private void writeIndex() {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(INDEX_PACKAGE).append(";\n\n");
+        source.append("/**\n");
+        source.append(" * Generated by ").append(CommandIndexProcessor.class.getName()).append(". Do not edit.\n");
+        source.append(" */\n");
+        source.append("public final class ").append(INDEX_CLASS).append(" implements CommandIndex {\n\n");
+        source.append("    @Override\n");
+        source.append("    public void register(Registrar registrar) {\n");
+
+        for (Map.Entry<String, List<String>> entry : commands.entrySet()) {
+            source.append("        registrar.register(new String[] {");
+            List<String> aliases = entry.getValue();
+            for (int i = 0; i < aliases.size(); i++) {
+                source.append(i == 0 ? " " : ", ");
+                source.append('"').append(escape(aliases.get(i))).append('"');
+            }
+            source.append(aliases.isEmpty() ? "}" : " }");
+            source.append(", ").append(entry.getKey()).append("::new);\n");
+        }
+
+        source.append("    }\n");
+        source.append("}\n");
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(INDEX_PACKAGE + "." + INDEX_CLASS);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write command index: " + e.getMessage());
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
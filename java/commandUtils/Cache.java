@@ -2,28 +2,104 @@ package commandUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 
 import command.Command;
+import command.StatsRegistry;
 import command.CommandResult;
 
 /**
  * Implements a cache system for the console application.
- * The cache stores data in memory and can persist it to a file.
+ * The cache stores data and persists it to disk.
+ * It is safe to use from commands running in parallel.
+ * The entries are held by a {@link CacheStore}, selected with -Dconsolex.cache.store:
+ * "journal" (default) keeps them in memory and journals changes in the background,
+ * "mapped" keeps them in a memory-mapped file.
+ *
+ * Entries may expire. Expired entries are hidden from reads at once and deleted by
+ * a background sweep. The cache can be bounded by -Dconsolex.cache.maxEntries and/or
+ * -Dconsolex.cache.maxBytes; entries holding aliases are never evicted.
+ *
+ * A key of the form "name_key" belongs to the namespace "name". The keys of every
+ * namespace are indexed separately, see {@link #namespace(String)}. All keys are
+ * also kept in a sorted index, which answers prefix queries, see {@link #keys(String, String)}.
  */
 public class Cache implements Command {
-    private static final Map<String, Object> cache = new ConcurrentHashMap<>();
-    private static final String CACHE_FILE = "console_cache.json";
-    private static final ObjectMapper objectMapper = new ObjectMapper()
-        .enable(SerializationFeature.INDENT_OUTPUT);
-    private static boolean initialized = false;
+    private static final String JOURNAL_FILE = "console_cache.journal";
+    private static final String SNAPSHOT_FILE = "console_cache.snapshot";
+    private static final String MAPPED_FILE = "console_cache.db";
+    // Written by earlier versions, imported into the journal on first start
+    private static final String LEGACY_CACHE_FILE = "console_cache.json";
+    private static final String STORE_PROPERTY = "consolex.cache.store";
+    // Set -Dconsolex.cache.durability=async|sync|fsync to choose when changes reach the disk
+    private static final String DURABILITY_PROPERTY = "consolex.cache.durability";
+    // Set -Dconsolex.cache.flushInterval=<ms> and -Dconsolex.cache.flushBatch=<changes> to tune async writes
+    private static final String FLUSH_INTERVAL_PROPERTY = "consolex.cache.flushInterval";
+    private static final String FLUSH_BATCH_PROPERTY = "consolex.cache.flushBatch";
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    private static final long DEFAULT_FLUSH_BATCH = 1000;
+    // Set -Dconsolex.cache.compactThreshold=<bytes> to change the journal size that triggers a snapshot
+    private static final String COMPACT_THRESHOLD_PROPERTY = "consolex.cache.compactThreshold";
+    private static final long DEFAULT_COMPACT_THRESHOLD = 1024 * 1024;
+    // Set -Dconsolex.cache.maxEntries=<n> and/or -Dconsolex.cache.maxBytes=<bytes> to bound the cache
+    private static final String MAX_ENTRIES_PROPERTY = "consolex.cache.maxEntries";
+    private static final String MAX_BYTES_PROPERTY = "consolex.cache.maxBytes";
+    // Set -Dconsolex.cache.eviction=lru|lfu|tinylfu to choose which entries a bounded cache evicts
+    private static final String EVICTION_PROPERTY = "consolex.cache.eviction";
+    // Set -Dconsolex.cache.sweepInterval=<ms> to change how often expired entries are deleted
+    private static final String SWEEP_INTERVAL_PROPERTY = "consolex.cache.sweepInterval";
+    private static final long DEFAULT_SWEEP_INTERVAL_MILLIS = 1000;
+    static final char NAMESPACE_SEPARATOR = '_';
+    // Entries holding aliases, pinned so that an alias never disappears
+    private static final String PINNED_PREFIX = "alias" + NAMESPACE_SEPARATOR;
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static volatile boolean initialized = false;
+    private static CacheStore store;
+    // Null if the cache is not bounded
+    private static CacheEviction eviction;
+    // Changes of the store and the indexes are made while holding the lock returned by writeLock()
+    private static final Object INDEX_LOCK = new Object();
+    private static ScheduledExecutorService sweeper;
+    private static final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
+    private static final Map<String, CacheNamespace> namespaces = new ConcurrentHashMap<>();
+    // All keys in order, maintained together with the namespace indexes
+    private static final ConcurrentSkipListMap<String, Boolean> sortedKeys = new ConcurrentSkipListMap<>();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder puts = new LongAdder();
+    private static final LongAdder removes = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+    private static final LongAdder expirations = new LongAdder();
     
     /**
      * Constructor for the command implementation.
@@ -33,40 +109,293 @@ public class Cache implements Command {
     }
     
     /**
-     * Initialize the cache, loading saved values from the cache file.
+     * Initialize the cache, loading saved values from the configured store.
      */
-    public static synchronized void initialize() {
+    public static void initialize() {
+        // Checked without locking, every cache access goes through here
+        if (initialized) {
+            return;
+        }
+        loadCache();
+    }
+    
+    private static synchronized void loadCache() {
         if (initialized) {
             return;
         }
         
-        File cacheFile = new File(CACHE_FILE);
-        if (cacheFile.exists()) {
-            try {
-                Map<String, Object> loadedCache = objectMapper.readValue(cacheFile, 
-                    new TypeReference<Map<String, Object>>(){});
-                if (loadedCache != null) {
-                    cache.putAll(loadedCache);
-                }
-            } catch (IOException e) {
-                System.err.println("Error loading cache: " + e.getMessage());
+        store = createStore();
+        store.load(new File(LEGACY_CACHE_FILE));
+        // Changes merged from now on are reported, earlier ones are part of the loaded entries
+        store.setRemoteChangeListener(Cache::remoteChanged);
+        StatsRegistry.register("cache", Cache::getStats);
+        StatsRegistry.register("cache persistence", store::getStats);
+        
+        // Only the keys, a mapped store keeps the values off the heap
+        store.forEachKey(Cache::indexAdd);
+        
+        eviction = createEviction();
+        if (eviction != null) {
+            // Track the loaded entries, evicting right away if the bounds were lowered
+            for (String victim : recordLoaded()) {
+                store.remove(victim);
+                indexRemove(victim);
             }
+            StatsRegistry.register("cache eviction", () -> {
+                synchronized (eviction) {
+                    return eviction.getStats();
+                }
+            });
         }
         
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepInterval = Math.max(1, Long.getLong(SWEEP_INTERVAL_PROPERTY, DEFAULT_SWEEP_INTERVAL_MILLIS));
+        sweeper.scheduleWithFixedDelay(Cache::sweepExpired, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
         initialized = true;
     }
     
+    private static CacheEviction createEviction() {
+        long maxEntries = Long.getLong(MAX_ENTRIES_PROPERTY, 0);
+        long maxBytes = Long.getLong(MAX_BYTES_PROPERTY, 0);
+        if (maxEntries <= 0 && maxBytes <= 0) {
+            return null;
+        }
+        String name = System.getProperty(EVICTION_PROPERTY, "lru");
+        EvictionPolicy policy = EvictionPolicy.create(name);
+        if (policy == null) {
+            System.err.println("Unknown cache eviction policy '" + name + "', using lru");
+            policy = new LruPolicy();
+        }
+        return new CacheEviction(policy, maxEntries, maxBytes);
+    }
+    
     /**
-     * Save the cache to a file.
+     * Get the lock held while changing the store and the indexes. A bounded cache
+     * uses its eviction, which has to change together with the store.
+     */
+    private static Object writeLock() {
+        return eviction != null ? eviction : INDEX_LOCK;
+    }
+    
+    /**
+     * Record every entry of the store in the eviction, streaming them instead of
+     * copying them all. The store cannot be changed while it is walked, so the
+     * victims are returned for the caller to remove.
+     */
+    private static List<String> recordLoaded() {
+        List<String> evicted = new ArrayList<>();
+        store.forEach((key, value) -> {
+            if (!isPinned(key)) {
+                evicted.addAll(eviction.recordWrite(key, value));
+            }
+        });
+        return evicted;
+    }
+    
+    private static boolean isPinned(String key) {
+        return key.startsWith(PINNED_PREFIX);
+    }
+    
+    /**
+     * Get a namespace of the cache, e.g. "alias" for the keys starting with "alias_".
+     * 
+     * @param name Name of the namespace, without underscore
+     * @return The namespace
+     */
+    public static CacheNamespace namespace(String name) {
+        if (name == null || name.isEmpty() || name.indexOf(NAMESPACE_SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Invalid cache namespace: " + name);
+        }
+        initialize();
+        return namespaces.computeIfAbsent(name, CacheNamespace::new);
+    }
+    
+    private static void indexAdd(String key) {
+        sortedKeys.put(key, Boolean.TRUE);
+        int separator = key.indexOf(NAMESPACE_SEPARATOR);
+        if (separator > 0) {
+            namespaces.computeIfAbsent(key.substring(0, separator), CacheNamespace::new).keys
+                .add(key.substring(separator + 1));
+        }
+    }
+    
+    private static void indexRemove(String key) {
+        sortedKeys.remove(key);
+        int separator = key.indexOf(NAMESPACE_SEPARATOR);
+        if (separator > 0) {
+            CacheNamespace namespace = namespaces.get(key.substring(0, separator));
+            if (namespace != null) {
+                namespace.keys.remove(key.substring(separator + 1));
+            }
+        }
+    }
+    
+    /**
+     * Update the indexes and the eviction after another process changed the entries.
+     * 
+     * @param key Changed key, or null if all entries may have changed
+     */
+    private static void remoteChanged(String key) {
+        // Waits while the cache is loading, the loaded entries already include the change
+        initialize();
+        if (key == null) {
+            synchronized (writeLock()) {
+                Set<String> keys = new HashSet<>();
+                store.forEachKey(keys::add);
+                sortedKeys.keySet().retainAll(keys);
+                for (CacheNamespace namespace : namespaces.values()) {
+                    namespace.keys.clear();
+                }
+                for (String entryKey : keys) {
+                    indexAdd(entryKey);
+                }
+                if (eviction != null) {
+                    eviction.recordClear();
+                    List<String> evicted = recordLoaded();
+                    for (String victim : evicted) {
+                        store.remove(victim);
+                        indexRemove(victim);
+                    }
+                    evictions.add(evicted.size());
+                }
+            }
+            notifyChanged(null);
+            return;
+        }
+        
+        List<String> evicted = Collections.emptyList();
+        synchronized (writeLock()) {
+            Object value = store.get(key);
+            if (value != null) {
+                indexAdd(key);
+                if (eviction != null && !isPinned(key)) {
+                    evicted = eviction.recordWrite(key, value);
+                    for (String victim : evicted) {
+                        store.remove(victim);
+                        indexRemove(victim);
+                    }
+                }
+            } else {
+                indexRemove(key);
+                if (eviction != null) {
+                    eviction.recordRemove(key);
+                }
+            }
+        }
+        evictions.add(evicted.size());
+        notifyChanged(key);
+        for (String victim : evicted) {
+            if (!victim.equals(key)) {
+                notifyChanged(victim);
+            }
+        }
+    }
+    
+    /**
+     * Get a value without counting the read, for listings.
+     * 
+     * @param key Cache key
+     * @return The value, or null if not found
+     */
+    public static Object peek(String key) {
+        initialize();
+        return store.get(key);
+    }
+    
+    /**
+     * Delete expired entries.
+     */
+    private static void sweepExpired() {
+        // Must not throw, an exception would cancel the periodic sweep
+        try {
+            long now = System.currentTimeMillis();
+            List<String> expired;
+            synchronized (writeLock()) {
+                expired = store.removeExpired(now);
+                for (String key : expired) {
+                    indexRemove(key);
+                    if (eviction != null) {
+                        eviction.recordRemove(key);
+                    }
+                }
+            }
+            expirations.add(expired.size());
+            for (String key : expired) {
+                notifyChanged(key);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error removing expired cache entries: " + e.getMessage());
+        }
+    }
+    
+    private static CacheStore createStore() {
+        String name = System.getProperty(STORE_PROPERTY, "journal");
+        if (name.equalsIgnoreCase("mapped")) {
+            return new MappedCacheStore(Paths.get(MAPPED_FILE), Paths.get(JOURNAL_FILE), Paths.get(SNAPSHOT_FILE),
+                objectMapper, getDurability());
+        }
+        if (!name.equalsIgnoreCase("journal")) {
+            System.err.println("Unknown cache store '" + name + "', using journal");
+        }
+        return new JournalCacheStore(Paths.get(JOURNAL_FILE), Paths.get(SNAPSHOT_FILE), objectMapper,
+            getDurability(), Long.getLong(FLUSH_INTERVAL_PROPERTY, DEFAULT_FLUSH_INTERVAL_MILLIS),
+            Long.getLong(FLUSH_BATCH_PROPERTY, DEFAULT_FLUSH_BATCH),
+            Long.getLong(COMPACT_THRESHOLD_PROPERTY, DEFAULT_COMPACT_THRESHOLD));
+    }
+    
+    private static CacheStore.Durability getDurability() {
+        String name = System.getProperty(DURABILITY_PROPERTY, "async");
+        CacheStore.Durability durability = CacheStore.Durability.parse(name);
+        if (durability == null) {
+            System.err.println("Unknown cache durability '" + name + "', using async");
+            return CacheStore.Durability.ASYNC;
+        }
+        return durability;
+    }
+    
+    /**
+     * Write pending changes now, without waiting for the background writer.
      */
     public static void saveCache() {
+        initialize();
         try {
-            objectMapper.writeValue(new File(CACHE_FILE), cache);
+            store.flush();
         } catch (IOException e) {
             System.err.println("Error saving cache: " + e.getMessage());
         }
     }
     
+    /**
+     * Write pending changes and stop the background writer.
+     * Changes made afterwards are still written when the application exits.
+     */
+    public static void shutdown() {
+        if (initialized) {
+            sweeper.shutdown();
+            store.shutdown();
+        }
+    }
+    
+    /**
+     * Register a listener notified after an entry was stored or removed.
+     * The listener receives the changed key, or null when the cache was cleared.
+     * 
+     * @param listener Listener to notify
+     */
+    public static void addChangeListener(Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
+    
+    private static void notifyChanged(String key) {
+        for (Consumer<String> listener : changeListeners) {
+            listener.accept(key);
+        }
+    }
+    
     /**
      * Store a value in the cache.
      * 
@@ -74,12 +403,169 @@ public class Cache implements Command {
      * @param value Value to store
      */
     public static void put(String key, Object value) {
+        put(key, value, 0);
+    }
+    
+    /**
+     * Store a value in the cache that expires after the given time.
+     * In a bounded cache, storing a value may evict other entries, or the new entry
+     * itself if the eviction policy does not admit it.
+     * 
+     * @param key Cache key
+     * @param value Value to store
+     * @param ttlMillis Time to live in milliseconds, or 0 if the entry does not expire
+     * @throws UncheckedIOException If the value cannot be saved; the cache is not changed
+     */
+    public static void put(String key, Object value, long ttlMillis) {
         if (key == null) {
             throw new IllegalArgumentException("Cache key cannot be null");
         }
         initialize();
-        cache.put(key, value);
-        saveCache();
+        long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+        List<String> evicted = Collections.emptyList();
+        synchronized (writeLock()) {
+            store.put(key, value, expiresAt);
+            indexAdd(key);
+            if (eviction != null && !isPinned(key)) {
+                evicted = eviction.recordWrite(key, value);
+                for (String victim : evicted) {
+                    store.remove(victim);
+                    indexRemove(victim);
+                }
+            }
+        }
+        puts.increment();
+        evictions.add(evicted.size());
+        notifyChanged(key);
+        for (String victim : evicted) {
+            if (!victim.equals(key)) {
+                notifyChanged(victim);
+            }
+        }
+    }
+    
+    /**
+     * Store several values at once. The values are written to disk together, in a
+     * single write, and after a crash either all of them or none are restored;
+     * see {@link CacheStore#update(Map, Collection)} for the mapped store.
+     * In a bounded cache, the entries evicted to make room are removed afterwards.
+     * 
+     * @param entries Values to store by key
+     * @throws UncheckedIOException If a value cannot be saved; none of the values is stored
+     */
+    public static void putAll(Map<String, Object> entries) {
+        for (String key : entries.keySet()) {
+            if (key == null) {
+                throw new IllegalArgumentException("Cache key cannot be null");
+            }
+        }
+        initialize();
+        Set<String> evicted = Collections.emptySet();
+        synchronized (writeLock()) {
+            // Stored before the eviction sees the batch, so a value that cannot be saved changes nothing
+            store.update(entries, Collections.emptyList());
+            for (String key : entries.keySet()) {
+                indexAdd(key);
+            }
+            if (eviction != null) {
+                evicted = new LinkedHashSet<>();
+                for (Map.Entry<String, Object> entry : entries.entrySet()) {
+                    if (!isPinned(entry.getKey())) {
+                        evicted.addAll(eviction.recordWrite(entry.getKey(), entry.getValue()));
+                    }
+                }
+                if (!evicted.isEmpty()) {
+                    store.update(Collections.emptyMap(), evicted);
+                    for (String victim : evicted) {
+                        indexRemove(victim);
+                    }
+                }
+            }
+        }
+        puts.add(entries.size());
+        evictions.add(evicted.size());
+        for (String key : entries.keySet()) {
+            notifyChanged(key);
+        }
+        for (String victim : evicted) {
+            if (!entries.containsKey(victim)) {
+                notifyChanged(victim);
+            }
+        }
+    }
+    
+    /**
+     * Import the entries of a JSON object file, such as one written by {@link #exportTo(File)}.
+     * The file is read as a stream and stored in batches of {@value #IMPORT_BATCH_SIZE}
+     * entries, so it never has to fit in memory.
+     * 
+     * @param file JSON file to read
+     * @return Number of imported entries
+     * @throws IOException If the file cannot be read or does not hold a JSON object
+     */
+    public static int importFrom(File file) throws IOException {
+        initialize();
+        int count = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(file)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException(file + " does not contain a JSON object");
+            }
+            Map<String, Object> batch = new HashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.getCurrentName();
+                parser.nextToken();
+                batch.put(key, objectMapper.readValue(parser, Object.class));
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    putAll(batch);
+                    count += batch.size();
+                    batch = new HashMap<>();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw new IOException(file + " does not contain a JSON object");
+            }
+            putAll(batch);
+            count += batch.size();
+        }
+        return count;
+    }
+    
+    /**
+     * Write all entries to a JSON object file. The entries are streamed from the
+     * store, and the file is replaced only once it is complete.
+     * 
+     * @param file JSON file to write
+     * @return Number of exported entries
+     * @throws IOException If the file cannot be written
+     */
+    public static int exportTo(File file) throws IOException {
+        initialize();
+        Path target = file.toPath().toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        int[] count = new int[1];
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(temporary.toFile(),
+                JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            store.forEach((key, value) -> {
+                try {
+                    generator.writeFieldName(key);
+                    objectMapper.writeValue(generator, value);
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndObject();
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(temporary);
+            throw e.getCause();
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        return count[0];
     }
     
     /**
@@ -93,7 +579,35 @@ public class Cache implements Command {
             throw new IllegalArgumentException("Cache key cannot be null");
         }
         initialize();
-        return cache.get(key);
+        Object value = store.get(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        if (eviction != null && !isPinned(key)) {
+            synchronized (eviction) {
+                eviction.recordAccess(key);
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * Retrieve several values from the cache.
+     * 
+     * @param keys Cache keys
+     * @return The values found, by key in the order of the keys
+     */
+    public static Map<String, Object> getAll(Collection<String> keys) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String key : keys) {
+            Object value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
     }
     
     /**
@@ -107,9 +621,17 @@ public class Cache implements Command {
             throw new IllegalArgumentException("Cache key cannot be null");
         }
         initialize();
-        boolean removed = cache.remove(key) != null;
+        boolean removed;
+        synchronized (writeLock()) {
+            removed = store.remove(key);
+            indexRemove(key);
+            if (eviction != null) {
+                eviction.recordRemove(key);
+            }
+        }
         if (removed) {
-            saveCache();
+            removes.increment();
+            notifyChanged(key);
         }
         return removed;
     }
@@ -119,8 +641,46 @@ public class Cache implements Command {
      */
     public static void clear() {
         initialize();
-        cache.clear();
-        saveCache();
+        synchronized (writeLock()) {
+            store.clear();
+            sortedKeys.clear();
+            for (CacheNamespace namespace : namespaces.values()) {
+                namespace.keys.clear();
+            }
+            if (eviction != null) {
+                eviction.recordClear();
+            }
+        }
+        notifyChanged(null);
+    }
+    
+    /**
+     * Get the keys starting with a prefix, in order. The result is a view of the
+     * sorted index rather than a copy, so it costs nothing to create and can be
+     * read a page at a time. Keys changed while it is read may or may not be seen,
+     * and a key may already be gone when its value is read.
+     * 
+     * @param prefix Key prefix, or an empty string for all keys
+     * @param after Key to continue after, or null to start with the first key
+     * @return Unmodifiable view of the sorted keys
+     */
+    public static NavigableSet<String> keys(String prefix, String after) {
+        initialize();
+        String from = prefix;
+        boolean inclusive = true;
+        if (after != null && after.compareTo(prefix) >= 0) {
+            from = after;
+            inclusive = false;
+        }
+        if (prefix.isEmpty()) {
+            return Collections.unmodifiableNavigableSet(sortedKeys.keySet().tailSet(from, inclusive));
+        }
+        // Every key with the prefix sorts below the prefix followed by the highest char
+        String to = prefix + Character.MAX_VALUE;
+        if (from.compareTo(to) >= 0) {
+            return Collections.emptyNavigableSet();
+        }
+        return Collections.unmodifiableNavigableSet(sortedKeys.keySet().subSet(from, inclusive, to, false));
     }
     
     /**
@@ -130,7 +690,7 @@ public class Cache implements Command {
      */
     public static Map<String, Object> getAll() {
         initialize();
-        return new HashMap<>(cache);
+        return store.getAll();
     }
     
     /**
@@ -144,7 +704,7 @@ public class Cache implements Command {
             return false;
         }
         initialize();
-        return cache.containsKey(key);
+        return store.containsKey(key);
     }
     
     /**
@@ -154,7 +714,20 @@ public class Cache implements Command {
      */
     public static int size() {
         initialize();
-        return cache.size();
+        return store.size();
+    }
+    
+    /**
+     * Get a snapshot of the cache counters. The counters start at zero when the
+     * application starts.
+     * 
+     * @return Current statistics
+     */
+    public static Stats getStats() {
+        initialize();
+        return new Stats(store.size(), hits.sum(), misses.sum(), puts.sum(), removes.sum(), evictions.sum(),
+            expirations.sum(), store.getFlushCount(), store.getFlushMicros(), store.getLastFlushMicros(),
+            store.getDiskSize(), store.getHeapSize());
     }
     
     @Override
@@ -282,4 +855,121 @@ public class Cache implements Command {
         clear();
         return new CommandResult(false, "Cleared " + count + " cache entries");
     }
+    
+    /**
+     * Snapshot of the cache counters.
+     */
+    public static final class Stats {
+        private final int entries;
+        private final long hits;
+        private final long misses;
+        private final long puts;
+        private final long removes;
+        private final long evictions;
+        private final long expirations;
+        private final long flushes;
+        private final long flushMicros;
+        private final long lastFlushMicros;
+        private final long diskBytes;
+        private final long heapBytes;
+        
+        Stats(int entries, long hits, long misses, long puts, long removes, long evictions, long expirations,
+                long flushes, long flushMicros, long lastFlushMicros, long diskBytes, long heapBytes) {
+            this.entries = entries;
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+            this.removes = removes;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.flushes = flushes;
+            this.flushMicros = flushMicros;
+            this.lastFlushMicros = lastFlushMicros;
+            this.diskBytes = diskBytes;
+            this.heapBytes = heapBytes;
+        }
+        
+        /**
+         * Number of entries, including expired ones not deleted yet.
+         */
+        public int getEntries() {
+            return entries;
+        }
+        
+        public long getHits() {
+            return hits;
+        }
+        
+        public long getMisses() {
+            return misses;
+        }
+        
+        /**
+         * Share of reads that found a value, between 0 and 1.
+         */
+        public double getHitRate() {
+            long reads = hits + misses;
+            return reads == 0 ? 0 : (double) hits / reads;
+        }
+        
+        public long getPuts() {
+            return puts;
+        }
+        
+        /**
+         * Number of entries removed explicitly, not counting clears, evictions and expirations.
+         */
+        public long getRemoves() {
+            return removes;
+        }
+        
+        public long getEvictions() {
+            return evictions;
+        }
+        
+        /**
+         * Number of expired entries deleted by the background sweep.
+         */
+        public long getExpirations() {
+            return expirations;
+        }
+        
+        /**
+         * Number of writes of the store to disk.
+         */
+        public long getFlushes() {
+            return flushes;
+        }
+        
+        public long getLastFlushMicros() {
+            return lastFlushMicros;
+        }
+        
+        public long getAverageFlushMicros() {
+            return flushes == 0 ? 0 : flushMicros / flushes;
+        }
+        
+        /**
+         * Size of the cache files in bytes.
+         */
+        public long getDiskBytes() {
+            return diskBytes;
+        }
+        
+        /**
+         * Estimated heap memory held by the entries in bytes.
+         */
+        public long getHeapBytes() {
+            return heapBytes;
+        }
+        
+        @Override
+        public String toString() {
+            return "entries: " + entries + ", hits: " + hits + ", misses: " + misses + " (hit rate "
+                    + Math.round(getHitRate() * 100) + "%), puts: " + puts + ", removes: " + removes
+                    + ", evictions: " + evictions + ", expirations: " + expirations + ", flushes: " + flushes
+                    + ", flush latency: last " + lastFlushMicros + " us, avg " + getAverageFlushMicros()
+                    + " us, disk: " + diskBytes + " bytes, heap: ~" + heapBytes + " bytes";
+        }
+    }
 }
@@ -0,0 +1,111 @@
+package commandUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the cache within a maximum number of entries and/or an estimated number
+ * of bytes by evicting entries chosen by an {@link EvictionPolicy}.
+ * Pinned entries are neither tracked nor evicted and do not count towards the bounds.
+ *
+ * Not thread safe, the cache serializes all calls together with the changes of the store.
+ */
+final class CacheEviction {
+    private final EvictionPolicy policy;
+    private final long maxEntries;
+    private final long maxBytes;
+    // Estimated size of every tracked entry
+    private final Map<String, Long> weights = new HashMap<>();
+    private long totalBytes;
+    private long evictions;
+
+    /**
+     * Create an eviction for the given bounds.
+     *
+     * @param policy Policy choosing the entries to evict
+     * @param maxEntries Maximum number of entries, or 0 for no limit
+     * @param maxBytes Maximum estimated size in bytes, or 0 for no limit
+     */
+    CacheEviction(EvictionPolicy policy, long maxEntries, long maxBytes) {
+        this.policy = policy;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Record that an entry was stored and choose the entries to evict to get back
+     * within the bounds. The stored entry itself may be chosen.
+     *
+     * @return Keys to remove from the store, in order
+     */
+    List<String> recordWrite(String key, Object value) {
+        long weight = weigh(key, value);
+        Long previous = weights.put(key, weight);
+        totalBytes += weight - (previous != null ? previous : 0);
+        policy.recordWrite(key);
+
+        List<String> victims = new ArrayList<>();
+        while (isOverBound()) {
+            String victim = policy.selectVictim();
+            if (victim == null) {
+                break;
+            }
+            totalBytes -= weights.remove(victim);
+            evictions++;
+            victims.add(victim);
+        }
+        return victims;
+    }
+
+    /**
+     * Record a read of a key, whether it was found or not.
+     */
+    void recordAccess(String key) {
+        policy.recordAccess(key);
+    }
+
+    /**
+     * Record that an entry was removed.
+     */
+    void recordRemove(String key) {
+        Long weight = weights.remove(key);
+        if (weight != null) {
+            totalBytes -= weight;
+            policy.recordRemove(key);
+        }
+    }
+
+    /**
+     * Record that all entries were removed.
+     */
+    void recordClear() {
+        weights.clear();
+        totalBytes = 0;
+        policy.clear();
+    }
+
+    private boolean isOverBound() {
+        return (maxEntries > 0 && weights.size() > maxEntries) || (maxBytes > 0 && totalBytes > maxBytes);
+    }
+
+    /**
+     * Get a description of the eviction counters.
+     *
+     * @return Rendered statistics
+     */
+    String getStats() {
+        return "policy: " + policy.getName() + ", entries: " + weights.size()
+                + (maxEntries > 0 ? "/" + maxEntries : "") + ", estimated size: " + totalBytes
+                + (maxBytes > 0 ? "/" + maxBytes : "") + " bytes, evictions: " + evictions;
+    }
+
+    /**
+     * Estimate the heap size of an entry: the characters of key and value plus
+     * a fixed overhead for the objects and the map entry.
+     */
+    static long weigh(String key, Object value) {
+        return 64 + 2L * key.length() + 2L * String.valueOf(value).length();
+    }
+}
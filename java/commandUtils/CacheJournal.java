@@ -0,0 +1,548 @@
+package commandUtils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Log-structured file storage of the cache: a snapshot of all entries plus a
+ * journal of the changes made since the snapshot was written.
+ *
+ * Both files start with a magic header followed by records of the form
+ * {@code [payload length][CRC32 of payload][payload]}. A payload is an operation
+ * byte, the UTF-8 key and, for puts, the expiry time if the entry has one and
+ * the value as JSON. A batch is one record whose value holds the records of its
+ * changes, so it is replayed completely or not at all. A record cut off by a
+ * crash, or one whose checksum does not match, ends the replay and is truncated.
+ *
+ * Several processes may share the files. Each one changes them only while holding
+ * the lock of {@link #lock()}, and before appending reads the records the others
+ * appended since, see {@link #readNewChanges()}. A snapshot written by another
+ * process is noticed by the file being replaced.
+ *
+ * Not thread safe, the owner serializes all calls.
+ */
+final class CacheJournal {
+    private static final byte[] MAGIC = {'C', 'X', 'J', '1'};
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+    private static final byte OP_PUT_EXPIRING = 4;
+    private static final byte OP_BATCH = 5;
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final Path lockFile;
+    private final ObjectMapper objectMapper;
+    private FileChannel journal;
+    private FileChannel lockChannel;
+    private long snapshotSize;
+    // Length of the journal whose records are reflected in the owner's entries
+    private long synced;
+    // Attributes of the snapshot when it was last read or written
+    private Object snapshotVersion;
+
+    /**
+     * Create a journal stored in the given files. Nothing is read until {@link #load(Map)}.
+     *
+     * @param journalFile File receiving the changes
+     * @param snapshotFile File holding the last snapshot
+     * @param objectMapper Mapper used to encode values
+     */
+    CacheJournal(Path journalFile, Path snapshotFile, ObjectMapper objectMapper) {
+        this.journalFile = journalFile;
+        this.snapshotFile = snapshotFile;
+        this.lockFile = journalFile.resolveSibling(journalFile.getFileName() + ".lock");
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Check whether neither the snapshot nor the journal exists yet.
+     */
+    boolean isEmpty() {
+        return !Files.exists(snapshotFile) && !Files.exists(journalFile);
+    }
+
+    /**
+     * Replay the snapshot and then the journal into the maps, and open the
+     * journal for appending.
+     *
+     * @param target Map receiving the entries
+     * @param expirations Map receiving the expiry times of entries that have one
+     * @throws IOException If a file cannot be read or the journal cannot be opened
+     */
+    void load(Map<String, Object> target, Map<String, Long> expirations) throws IOException {
+        long valid = read(target, expirations);
+        journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        if (valid < journal.size()) {
+            // Incomplete record of an interrupted write, drop it so new records follow valid ones
+            journal.truncate(valid);
+        }
+        if (valid < MAGIC.length) {
+            journal.truncate(0);
+            writeFully(journal, ByteBuffer.wrap(MAGIC));
+        }
+        synced = journal.size();
+    }
+
+    /**
+     * Lock the files against changes by other processes. Called before {@link #load},
+     * and around every change and every read of new changes.
+     *
+     * @return The lock, to be released when done
+     * @throws IOException If the lock file cannot be opened
+     */
+    FileLock lock() throws IOException {
+        if (lockChannel == null) {
+            lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return lockChannel.lock();
+    }
+
+    /**
+     * Check, without locking, whether another process may have changed the files
+     * since the last read.
+     */
+    boolean hasNewChanges() throws IOException {
+        return journal != null && (journal.size() != synced || !readSnapshotVersion().equals(snapshotVersion));
+    }
+
+    /**
+     * Read the changes other processes appended to the journal since the last read
+     * or write. Must be called while holding the lock.
+     *
+     * @return The changes in order, or null if another process wrote a new snapshot;
+     *         then all entries have to be read again with {@link #reload}
+     * @throws IOException If the journal cannot be read
+     */
+    List<Change> readNewChanges() throws IOException {
+        ensureOpen();
+        long size = journal.size();
+        if (size < synced || !readSnapshotVersion().equals(snapshotVersion)) {
+            return null;
+        }
+        List<Change> changes = new ArrayList<>();
+        if (size > synced) {
+            long valid = replay(journal, synced, changes::add);
+            if (valid < size) {
+                // Left by a process that crashed while writing, drop it so new records follow valid ones
+                journal.truncate(valid);
+            }
+            synced = valid;
+        }
+        return changes;
+    }
+
+    /**
+     * Read all entries again after another process wrote a new snapshot.
+     * Must be called while holding the lock.
+     *
+     * @param target Map receiving the entries
+     * @param expirations Map receiving the expiry times of entries that have one
+     * @throws IOException If a file cannot be read
+     */
+    void reload(Map<String, Object> target, Map<String, Long> expirations) throws IOException {
+        ensureOpen();
+        long valid = read(target, expirations);
+        if (valid < journal.size()) {
+            journal.truncate(valid);
+        }
+        synced = Math.max(valid, MAGIC.length);
+    }
+
+    /**
+     * Replay the snapshot and then the journal into the maps without opening the
+     * journal for appending, e.g. to import the entries into another store.
+     *
+     * @param target Map receiving the entries
+     * @param expirations Map receiving the expiry times of entries that have one
+     * @return Length of the valid part of the journal
+     * @throws IOException If a file cannot be read
+     */
+    long read(Map<String, Object> target, Map<String, Long> expirations) throws IOException {
+        snapshotVersion = readSnapshotVersion();
+        if (Files.exists(snapshotFile)) {
+            long valid = replay(snapshotFile, target, expirations);
+            snapshotSize = Files.size(snapshotFile);
+            if (valid < snapshotSize) {
+                // Snapshots are replaced atomically, so this is damage rather than a crash
+                System.err.println("Ignoring " + (snapshotSize - valid) + " damaged bytes of " + snapshotFile);
+            }
+        }
+        return Files.exists(journalFile) ? replay(journalFile, target, expirations) : 0;
+    }
+
+    /**
+     * Get the snapshot and journal files.
+     */
+    Path[] getFiles() {
+        return new Path[] {snapshotFile, journalFile};
+    }
+
+    /**
+     * Append encoded records to the journal.
+     *
+     * @param records Records created by the encode methods
+     * @param force Whether to force the journal to the storage device
+     * @throws IOException If the journal cannot be written
+     */
+    void append(ByteBuffer records, boolean force) throws IOException {
+        ensureOpen();
+        // Other processes may have appended since, new records go at the end
+        journal.position(journal.size());
+        writeFully(journal, records);
+        if (force) {
+            journal.force(false);
+        }
+        synced = journal.size();
+    }
+
+    /**
+     * Replace the snapshot with the given entries and empty the journal.
+     * The new snapshot is forced to the device before the journal is truncated.
+     * Should a crash happen in between, replaying the old journal on top of the new
+     * snapshot yields the same entries, since the snapshot already contains its changes.
+     *
+     * @param entries All entries of the cache
+     * @param expirations Expiry times of the entries that have one
+     * @throws IOException If the snapshot cannot be written
+     */
+    void compact(Map<String, Object> entries, Map<String, Long> expirations) throws IOException {
+        ensureOpen();
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            buffer.put(MAGIC);
+            for (Map.Entry<String, Object> entry : entries.entrySet()) {
+                Long expiresAt = expirations.get(entry.getKey());
+                byte[] record = encodePut(entry.getKey(), entry.getValue(), expiresAt != null ? expiresAt : 0);
+                if (record.length > buffer.remaining()) {
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    buffer.clear();
+                }
+                if (record.length > buffer.remaining()) {
+                    writeFully(channel, ByteBuffer.wrap(record));
+                } else {
+                    buffer.put(record);
+                }
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+            channel.force(true);
+            snapshotSize = channel.size();
+        }
+
+        try {
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        snapshotVersion = readSnapshotVersion();
+
+        journal.truncate(MAGIC.length);
+        journal.force(true);
+        synced = MAGIC.length;
+    }
+
+    /**
+     * Get what identifies the current snapshot file; a snapshot written by any
+     * process replaces the file and so changes it.
+     */
+    private Object readSnapshotVersion() throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(snapshotFile, BasicFileAttributes.class);
+            return Arrays.asList(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+        } catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Get the size of the journal in bytes.
+     */
+    long getJournalSize() throws IOException {
+        return journal != null ? journal.size() : 0;
+    }
+
+    /**
+     * Get the size of the last snapshot in bytes.
+     */
+    long getSnapshotSize() {
+        return snapshotSize;
+    }
+
+    /**
+     * Close the journal file.
+     */
+    void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        if (lockChannel != null) {
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * Encode storing a value.
+     *
+     * @param expiresAt Expiry time in epoch milliseconds, or 0 if the entry does not expire
+     * @throws IOException If the value cannot be converted to JSON
+     */
+    byte[] encodePut(String key, Object value, long expiresAt) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(value);
+        if (expiresAt <= 0) {
+            return encode(OP_PUT, key, json);
+        }
+        return encode(OP_PUT_EXPIRING, key, ByteBuffer.allocate(8 + json.length).putLong(expiresAt).put(json).array());
+    }
+
+    /**
+     * Encode removing a key.
+     */
+    byte[] encodeRemove(String key) {
+        return encode(OP_REMOVE, key, new byte[0]);
+    }
+
+    /**
+     * Encode removing all keys.
+     */
+    byte[] encodeClear() {
+        return encode(OP_CLEAR, "", new byte[0]);
+    }
+
+    /**
+     * Encode several changes as one record.
+     *
+     * @param records Records returned by the other encode methods
+     */
+    byte[] encodeBatch(List<byte[]> records) {
+        int length = 0;
+        for (byte[] record : records) {
+            length += record.length;
+        }
+        ByteBuffer value = ByteBuffer.allocate(length);
+        for (byte[] record : records) {
+            value.put(record);
+        }
+        return encode(OP_BATCH, "", value.array());
+    }
+
+    private static byte[] encode(byte op, String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 1 + 4 + keyBytes.length + value.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + payloadLength);
+        record.putInt(payloadLength);
+        record.putInt(0); // checksum, filled in below
+        record.put(op).putInt(keyBytes.length).put(keyBytes).put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_LENGTH, payloadLength);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    /**
+     * Apply the records of a file to the map.
+     *
+     * @return Length of the valid part of the file, or 0 if the header is missing
+     */
+    private long replay(Path file, Map<String, Object> target, Map<String, Long> expirations) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            return replay(stream, 0, Files.size(file), file, change -> change.applyTo(target, expirations));
+        }
+    }
+
+    /**
+     * Read the records of the open journal from a position on.
+     *
+     * @return Position after the last valid record
+     */
+    private long replay(FileChannel channel, long position, Consumer<Change> changes) throws IOException {
+        channel.position(position);
+        // Not closed, that would close the channel
+        return replay(Channels.newInputStream(channel), position, channel.size(), journalFile, changes);
+    }
+
+    /**
+     * Read records from a stream positioned at the start of the file or of a record.
+     * A record that does not fit in the rest of the file ends the valid part, like
+     * one with a wrong checksum, before its length is trusted for an allocation.
+     *
+     * @param end Size of the file
+     * @return Position after the last valid record, or 0 if the header is missing
+     */
+    private long replay(InputStream stream, long start, long end, Path file, Consumer<Change> changes)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        long valid = start;
+        if (start == 0) {
+            byte[] magic = new byte[MAGIC.length];
+            try {
+                in.readFully(magic);
+            } catch (EOFException e) {
+                return 0;
+            }
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not a cache journal");
+            }
+            valid = MAGIC.length;
+        }
+
+        CRC32 crc = new CRC32();
+        while (true) {
+            byte[] payload;
+            int checksum;
+            try {
+                int length = in.readInt();
+                checksum = in.readInt();
+                if (length < 5 || length > end - valid - RECORD_HEADER_LENGTH) {
+                    return valid;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+            } catch (EOFException e) {
+                return valid;
+            }
+
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                return valid;
+            }
+            decode(payload, changes);
+            valid += RECORD_HEADER_LENGTH + payload.length;
+        }
+    }
+
+    private void decode(byte[] payload, Consumer<Change> changes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        byte op = buffer.get();
+        int keyLength = buffer.getInt();
+        String key = new String(payload, buffer.position(), keyLength, StandardCharsets.UTF_8);
+        int valueStart = buffer.position() + keyLength;
+
+        switch (op) {
+            case OP_PUT:
+                changes.accept(new Change(key, objectMapper.readValue(
+                    Arrays.copyOfRange(payload, valueStart, payload.length), Object.class), 0));
+                break;
+            case OP_PUT_EXPIRING:
+                // Expired entries are loaded too, the sweep removes them and journals the removal
+                changes.accept(new Change(key, objectMapper.readValue(
+                    Arrays.copyOfRange(payload, valueStart + 8, payload.length), Object.class),
+                    buffer.getLong(valueStart)));
+                break;
+            case OP_REMOVE:
+                changes.accept(new Change(key, null, 0));
+                break;
+            case OP_CLEAR:
+                changes.accept(new Change(null, null, 0));
+                break;
+            case OP_BATCH:
+                // The checksum of the batch covers the nested records
+                buffer.position(valueStart);
+                while (buffer.remaining() >= RECORD_HEADER_LENGTH) {
+                    int length = buffer.getInt();
+                    buffer.getInt();
+                    if (length < 5 || length > buffer.remaining()) {
+                        throw new IOException("Corrupt batch record in cache journal");
+                    }
+                    byte[] nested = new byte[length];
+                    buffer.get(nested);
+                    decode(nested, changes);
+                }
+                break;
+            default:
+                throw new IOException("Unknown cache journal operation: " + op);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        // Loading failed, keep the files untouched rather than overwriting them
+        if (journal == null) {
+            throw new IOException("Cache journal " + journalFile + " is not open");
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A change read from the files: storing a value, removing a key or removing all keys.
+     */
+    static final class Change {
+        private final String key;
+        private final Object value;
+        private final long expiresAt;
+
+        Change(String key, Object value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Get the changed key, or null if all keys were removed.
+         */
+        String getKey() {
+            return key;
+        }
+
+        boolean isClear() {
+            return key == null;
+        }
+
+        /**
+         * Apply the change to the maps of a store.
+         */
+        void applyTo(Map<String, Object> target, Map<String, Long> expirations) {
+            if (key == null) {
+                target.clear();
+                expirations.clear();
+            } else if (value == null) {
+                target.remove(key);
+                expirations.remove(key);
+            } else {
+                target.put(key, value);
+                if (expiresAt > 0) {
+                    expirations.put(key, expiresAt);
+                } else {
+                    expirations.remove(key);
+                }
+            }
+        }
+    }
+}
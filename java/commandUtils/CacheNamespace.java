@@ -0,0 +1,155 @@
+package commandUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A namespace of the {@link Cache}: the entries whose key starts with the name of
+ * the namespace followed by an underscore, e.g. "alias_ll" in the namespace "alias".
+ * The cache keeps the keys of every namespace in a separate index, so listing a
+ * namespace does not scan the entries of the whole cache.
+ *
+ * Keys passed to the methods of a namespace do not include the prefix.
+ */
+public final class CacheNamespace {
+    private final String name;
+    private final String prefix;
+    // Keys without the prefix, maintained by the cache. A key may stay here briefly
+    // after a concurrent removal, reads check the store.
+    final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+    CacheNamespace(String name) {
+        this.name = name;
+        this.prefix = name + Cache.NAMESPACE_SEPARATOR;
+    }
+
+    /**
+     * Get the name of the namespace.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the key of an entry of this namespace in the whole cache.
+     *
+     * @param key Key within the namespace
+     * @return Key including the prefix of the namespace
+     */
+    public String qualify(String key) {
+        return prefix + key;
+    }
+
+    /**
+     * Retrieve a value.
+     *
+     * @param key Key within the namespace
+     * @return The value, or null if not found
+     */
+    public Object get(String key) {
+        return Cache.get(prefix + key);
+    }
+
+    /**
+     * Store a value.
+     *
+     * @param key Key within the namespace
+     * @param value Value to store
+     */
+    public void put(String key, Object value) {
+        Cache.put(prefix + key, value);
+    }
+
+    /**
+     * Remove a value.
+     *
+     * @param key Key within the namespace
+     * @return true if the key was removed, false if it did not exist
+     */
+    public boolean remove(String key) {
+        return Cache.remove(prefix + key);
+    }
+
+    /**
+     * Check if a key exists.
+     *
+     * @param key Key within the namespace
+     * @return true if the key exists
+     */
+    public boolean containsKey(String key) {
+        return Cache.containsKey(prefix + key);
+    }
+
+    /**
+     * Get the keys of the namespace, sorted.
+     *
+     * @return Keys without the prefix
+     */
+    public Set<String> keySet() {
+        Set<String> result = new TreeSet<>();
+        for (String key : keys) {
+            if (Cache.peek(prefix + key) != null) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get a copy of the entries of the namespace.
+     *
+     * @return Map of keys without the prefix to values
+     */
+    public Map<String, Object> getAll() {
+        Map<String, Object> result = new HashMap<>();
+        for (String key : keys) {
+            Object value = Cache.peek(prefix + key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of entries of the namespace.
+     */
+    public int size() {
+        return keySet().size();
+    }
+
+    /**
+     * Remove all entries of the namespace.
+     *
+     * @return Number of removed entries
+     */
+    public int clear() {
+        int count = 0;
+        for (String key : keys) {
+            if (Cache.remove(prefix + key)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Register a listener notified after an entry of the namespace was stored or removed.
+     * The listener receives the key without the prefix, or null when the cache was cleared.
+     *
+     * @param listener Listener to notify
+     */
+    public void addChangeListener(Consumer<String> listener) {
+        Cache.addChangeListener(key -> {
+            if (key == null) {
+                listener.accept(null);
+            } else if (key.startsWith(prefix)) {
+                listener.accept(key.substring(prefix.length()));
+            }
+        });
+    }
+}
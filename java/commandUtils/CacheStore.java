@@ -0,0 +1,210 @@
+package commandUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Storage backend of the {@link Cache}. Implementations hold the entries and
+ * persist them; they must be safe to use from several threads.
+ *
+ * Entries may have an expiry time. Expired entries are treated as absent by all
+ * reads right away and are deleted by {@link #removeExpired(long)}.
+ */
+public interface CacheStore {
+
+    /**
+     * How changes reach the disk.
+     */
+    enum Durability {
+        /** Changes are written in the background; the last interval may be lost on a crash. */
+        ASYNC,
+        /** Every change is written before the call returns. */
+        SYNC,
+        /** Every change is written and forced to the storage device before the call returns. */
+        FSYNC;
+
+        /**
+         * Parse a durability mode name, ignoring case.
+         *
+         * @param name Mode name
+         * @return The mode, or null if the name is unknown
+         */
+        public static Durability parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Load the saved entries. Called once before any other method. If the store has
+     * no files yet, the entries of the JSON file written by earlier versions are
+     * imported and the file is renamed to *.bak.
+     *
+     * @param legacyFile JSON cache file of earlier versions
+     */
+    void load(File legacyFile);
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key Cache key
+     * @return The value, or null if not found
+     */
+    Object get(String key);
+
+    /**
+     * Store a value that does not expire.
+     *
+     * @param key Cache key
+     * @param value Value to store
+     */
+    default void put(String key, Object value) {
+        put(key, value, 0);
+    }
+
+    /**
+     * Store a value.
+     *
+     * @param key Cache key
+     * @param value Value to store
+     * @param expiresAt Expiry time in epoch milliseconds, or 0 if the entry does not expire
+     * @throws UncheckedIOException If the value cannot be encoded or written; the store is not changed
+     */
+    void put(String key, Object value, long expiresAt);
+
+    /**
+     * Store several values that do not expire and remove several keys as one change,
+     * persisted with a single write. The journal store recovers the change
+     * completely or not at all after a crash. The mapped store writes every value
+     * before it repoints any key, so only a crash during that last step leaves
+     * part of the change.
+     *
+     * @param puts Values to store
+     * @param removals Keys to remove after storing the values
+     * @throws UncheckedIOException If a value cannot be encoded or written; the store is not changed
+     */
+    void update(Map<String, Object> puts, Collection<String> removals);
+
+    /**
+     * Remove a key.
+     *
+     * @param key Cache key
+     * @return true if the key was removed, false if it did not exist
+     */
+    boolean remove(String key);
+
+    /**
+     * Remove all keys.
+     */
+    void clear();
+
+    /**
+     * Delete the entries that expired.
+     *
+     * @param now Current time in epoch milliseconds
+     * @return Keys of the deleted entries
+     */
+    List<String> removeExpired(long now);
+
+    /**
+     * Check if a key exists.
+     *
+     * @param key Cache key
+     * @return true if the key exists
+     */
+    boolean containsKey(String key);
+
+    /**
+     * Get the number of entries, including expired ones not deleted yet.
+     */
+    int size();
+
+    /**
+     * Get a copy of all entries.
+     *
+     * @return Map of all entries
+     */
+    Map<String, Object> getAll();
+
+    /**
+     * Call an action for every entry that has not expired, without copying all
+     * entries first. Changes made meanwhile may or may not be seen.
+     *
+     * @param action Action receiving key and value
+     */
+    void forEach(BiConsumer<String, Object> action);
+
+    /**
+     * Call an action for the key of every entry that has not expired, without
+     * reading the values. Changes made meanwhile may or may not be seen, and the
+     * action must not change the store.
+     *
+     * @param action Action receiving the key
+     */
+    void forEachKey(Consumer<String> action);
+
+    /**
+     * Write pending changes now.
+     *
+     * @throws IOException If the changes cannot be written
+     */
+    void flush() throws IOException;
+
+    /**
+     * Set the listener notified after entries were changed by another process
+     * sharing the files of the store. The listener receives the changed key, or
+     * null when all entries may have changed.
+     *
+     * @param listener Listener to notify
+     */
+    void setRemoteChangeListener(Consumer<String> listener);
+
+    /**
+     * Write pending changes and stop background work.
+     * Changes made afterwards are still written, on the calling thread or at exit.
+     */
+    void shutdown();
+
+    /**
+     * Get the number of writes to disk so far.
+     */
+    long getFlushCount();
+
+    /**
+     * Get the total time spent in writes to disk, in microseconds.
+     */
+    long getFlushMicros();
+
+    /**
+     * Get the duration of the last write to disk, in microseconds.
+     */
+    long getLastFlushMicros();
+
+    /**
+     * Get the size of the files of the store in bytes.
+     */
+    long getDiskSize();
+
+    /**
+     * Estimate the heap memory held by the entries in bytes. Entries kept outside
+     * the heap, such as in a mapped file, are not included.
+     */
+    long getHeapSize();
+
+    /**
+     * Get a description of the store counters.
+     *
+     * @return Rendered statistics
+     */
+    String getStats();
+}
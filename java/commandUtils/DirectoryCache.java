@@ -0,0 +1,257 @@
+package commandUtils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import command.StatsRegistry;
+
+/**
+ * Shared LRU cache of directory listings with the attributes of their entries,
+ * keyed by the absolute path of the directory. A watch is registered on every
+ * cached directory and its listing is dropped as soon as the watch reports a
+ * change. Watches miss changes on some file systems, e.g. those made by other
+ * machines on a network share, so the modification time of the directory is
+ * also compared on every lookup. Without a watch, a listing read within the
+ * granularity of the modification time of the last change is not reused.
+ */
+public final class DirectoryCache {
+    // Set -Dconsolex.dircache.size=<directories> to change the number of listings kept
+    private static final String SIZE_PROPERTY = "consolex.dircache.size";
+    // Set -Dconsolex.dircache.maxAge=<ms> to change how long a listing is reused at most;
+    // the attributes of an entry can change without the directory changing
+    private static final String MAX_AGE_PROPERTY = "consolex.dircache.maxAge";
+    // Modification times are this coarse on some file systems
+    private static final long MTIME_GRANULARITY_MILLIS = 2000;
+
+    private final int capacity = Math.max(1, Integer.getInteger(SIZE_PROPERTY, 256));
+    private final long maxAge = Long.getLong(MAX_AGE_PROPERTY, 30_000);
+    // Guarded by this
+    private final Map<Path, Listing> listings = new LinkedHashMap<Path, Listing>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Listing> eldest) {
+            if (size() > capacity) {
+                eldest.getValue().unwatch();
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+    // Null if the file system cannot be watched
+    private final WatchService watcher;
+    // Incremented on every change reported by a watch, so listings read before it are not stored
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    private DirectoryCache() {
+        watcher = startWatcher();
+        StatsRegistry.register("directory cache", this::getStats);
+    }
+
+    /**
+     * Get the shared directory cache.
+     *
+     * @return The directory cache
+     */
+    public static DirectoryCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        private static final DirectoryCache INSTANCE = new DirectoryCache();
+    }
+
+    /**
+     * List a directory, reading it only if there is no current listing of it.
+     *
+     * @param directory Directory to list
+     * @return Entries in no particular order; the list can be changed by the caller
+     * @throws IOException If the directory cannot be read
+     */
+    public List<FileEntry> list(Path directory) throws IOException {
+        Path key = directory.toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(key);
+        long builtAt;
+        synchronized (this) {
+            Listing listing = current(key, modified);
+            if (listing != null) {
+                hits++;
+                return new ArrayList<>(listing.entries);
+            }
+            misses++;
+            builtAt = version;
+        }
+
+        // Watch before reading, so that changes made while reading are noticed
+        WatchKey watchKey = watch(key);
+        long readAt = System.currentTimeMillis();
+        List<FileEntry> entries = FileManager.listEntries(key);
+        synchronized (this) {
+            if (builtAt == version) {
+                listings.put(key, new Listing(Collections.unmodifiableList(new ArrayList<>(entries)), modified,
+                    readAt, watchKey));
+            } else if (watchKey != null) {
+                // Changed while reading; the next lookup reads it again and watches anew
+                watchKey.cancel();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Check whether a path is a directory, or a link to one. A current listing of
+     * its parent answers if it holds the path as a directory, such as after
+     * completing the path. Anything else is checked on disk, since the watch event
+     * of a directory created just now may still be on its way.
+     *
+     * @param path Path to check
+     * @return true if the path is a directory
+     */
+    public boolean isDirectory(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        Path parent = key.getParent();
+        if (parent != null && key.getFileName() != null) {
+            try {
+                FileTime modified = Files.getLastModifiedTime(parent);
+                String name = key.getFileName().toString();
+                synchronized (this) {
+                    Listing listing = current(parent, modified);
+                    if (listing != null) {
+                        for (FileEntry entry : listing.entries) {
+                            if (entry.isDirectory() && entry.getName().equals(name)) {
+                                hits++;
+                                return true;
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Checked directly below
+            }
+        }
+        return Files.isDirectory(key);
+    }
+
+    /**
+     * Get the listing of a directory if it is still current, dropping it otherwise.
+     */
+    private Listing current(Path key, FileTime modified) {
+        Listing listing = listings.get(key);
+        if (listing == null) {
+            return null;
+        }
+        if (listing.isCurrent(modified, maxAge)) {
+            return listing;
+        }
+        listings.remove(key);
+        listing.unwatch();
+        invalidations++;
+        return null;
+    }
+
+    private WatchService startWatcher() {
+        WatchService service;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            // Modification times only
+            return null;
+        }
+
+        Thread thread = new Thread(() -> {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = service.take();
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    return;
+                }
+                // Any event, including an overflow, drops the whole listing
+                key.pollEvents();
+                invalidate((Path) key.watchable(), key);
+            }
+        }, "directory-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return service;
+    }
+
+    private WatchKey watch(Path directory) {
+        if (watcher == null || directory.getFileSystem() != FileSystems.getDefault()) {
+            return null;
+        }
+        try {
+            return directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private synchronized void invalidate(Path directory, WatchKey key) {
+        version++;
+        if (listings.remove(directory) != null) {
+            invalidations++;
+        }
+        // Registered again when the directory is read again
+        key.cancel();
+    }
+
+    private synchronized String getStats() {
+        long lookups = hits + misses;
+        long hitRate = lookups == 0 ? 0 : Math.round(hits * 100.0 / lookups);
+        return "hits: " + hits + ", misses: " + misses + " (" + hitRate + "% hit rate), directories: "
+            + listings.size() + "/" + capacity + ", evictions: " + evictions + ", invalidations: " + invalidations
+            + (watcher == null ? ", not watched" : "");
+    }
+
+    /**
+     * A directory listing with what is needed to tell whether it is still current.
+     */
+    private static final class Listing {
+        private final List<FileEntry> entries;
+        private final FileTime modified;
+        private final long readAt;
+        // Null if the directory is not watched
+        private final WatchKey key;
+
+        Listing(List<FileEntry> entries, FileTime modified, long readAt, WatchKey key) {
+            this.entries = entries;
+            this.modified = modified;
+            this.readAt = readAt;
+            this.key = key;
+        }
+
+        boolean isCurrent(FileTime currentModified, long maxAge) {
+            long now = System.currentTimeMillis();
+            if (!modified.equals(currentModified) || now - readAt > maxAge) {
+                return false;
+            }
+            // A change in the same tick as the last one would not change the time
+            return key != null && key.isValid() || readAt - modified.toMillis() >= MTIME_GRANULARITY_MILLIS;
+        }
+
+        void unwatch() {
+            if (key != null) {
+                key.cancel();
+            }
+        }
+    }
+}
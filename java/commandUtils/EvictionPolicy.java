@@ -0,0 +1,63 @@
+package commandUtils;
+
+import java.util.Locale;
+
+/**
+ * Decides which cache entry to evict when the cache is over its bound.
+ * Policies only track keys; the caller holds the entries and serializes all calls.
+ */
+interface EvictionPolicy {
+
+    /**
+     * Record that a key was stored, either added or replaced.
+     */
+    void recordWrite(String key);
+
+    /**
+     * Record a read of a key. Keys that are not tracked may still count towards
+     * their frequency.
+     */
+    void recordAccess(String key);
+
+    /**
+     * Stop tracking a key that was removed.
+     */
+    void recordRemove(String key);
+
+    /**
+     * Stop tracking all keys.
+     */
+    void clear();
+
+    /**
+     * Choose the key to evict and stop tracking it.
+     *
+     * @return The key to evict, or null if no key is tracked
+     */
+    String selectVictim();
+
+    /**
+     * Get the name of the policy as used in the configuration.
+     */
+    String getName();
+
+    /**
+     * Create a policy by name.
+     *
+     * @param name "lru", "lfu" or "tinylfu"
+     * @return The policy, or null if the name is unknown
+     */
+    static EvictionPolicy create(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "lru":
+                return new LruPolicy();
+            case "lfu":
+                return new LfuPolicy();
+            case "tinylfu":
+            case "w-tinylfu":
+                return new TinyLfuPolicy();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package commandUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * An entry of a directory listing with the attributes shown by ls -l.
+ * All attributes are read in a single call; only a symbolic link needs a
+ * second one to tell whether it points to a directory.
+ */
+public final class FileEntry {
+    private static final PosixFilePermission[] PERMISSIONS = PosixFilePermission.values();
+
+    private final String name;
+    private final boolean directory;
+    private final boolean symbolicLink;
+    private final long size;
+    private final long lastModified;
+    private final String permissions;
+
+    private FileEntry(String name, boolean directory, boolean symbolicLink, long size, long lastModified,
+            String permissions) {
+        this.name = name;
+        this.directory = directory;
+        this.symbolicLink = symbolicLink;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.permissions = permissions;
+    }
+
+    /**
+     * Read the attributes of a file.
+     *
+     * @param path File to read
+     * @param view Attribute view to read: "posix", "dos" or "basic"
+     * @return The entry
+     * @throws IOException If the attributes cannot be read
+     */
+    static FileEntry read(Path path, String view) throws IOException {
+        BasicFileAttributes attributes;
+        String permissions;
+        if (view.equals("posix")) {
+            PosixFileAttributes posix = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            attributes = posix;
+            permissions = permissions(posix.permissions());
+        } else if (view.equals("dos")) {
+            DosFileAttributes dos = Files.readAttributes(path, DosFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            attributes = dos;
+            permissions = dos.isReadOnly() ? "r--" : "rw-";
+        } else {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            permissions = "---";
+        }
+
+        boolean directory = attributes.isDirectory();
+        if (attributes.isSymbolicLink()) {
+            // Listed like the directory it points to, as File.isDirectory did
+            directory = Files.isDirectory(path);
+        }
+        char type = attributes.isSymbolicLink() ? 'l' : attributes.isDirectory() ? 'd' : '-';
+        return new FileEntry(String.valueOf(path.getFileName()), directory, attributes.isSymbolicLink(),
+            attributes.size(), attributes.lastModifiedTime().toMillis(), type + permissions);
+    }
+
+    private static String permissions(Set<PosixFilePermission> set) {
+        // The constants are declared in the order ls shows them: owner, group, others
+        char[] text = new char[PERMISSIONS.length];
+        for (int i = 0; i < PERMISSIONS.length; i++) {
+            text[i] = set.contains(PERMISSIONS[i]) ? "rwx".charAt(i % 3) : '-';
+        }
+        return new String(text);
+    }
+
+    /**
+     * Get the file name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the name as shown in listings, with a slash after directories.
+     */
+    public String getDisplayName() {
+        return directory ? name + "/" : name;
+    }
+
+    /**
+     * Check whether the entry is a directory, or a link to one.
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * Check whether the entry is a symbolic link.
+     */
+    public boolean isSymbolicLink() {
+        return symbolicLink;
+    }
+
+    /**
+     * Get the size in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the time of the last modification in milliseconds since the epoch.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get the type and permissions as shown by ls -l, e.g. "drwxr-xr-x".
+     * Without POSIX permissions only the owner part is known.
+     */
+    public String getPermissions() {
+        return permissions;
+    }
+}
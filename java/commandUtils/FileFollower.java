@@ -0,0 +1,210 @@
+package commandUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Follows a growing file, such as a log, passing on the lines appended to it.
+ * Only the bytes after the last position read are read again. The directory of
+ * the file is watched so that new lines show up as soon as they are written;
+ * the file is also checked at a fixed interval, which covers file systems
+ * without watch support.
+ *
+ * When the file is replaced, e.g. by log rotation, the rest of the old file is
+ * read and the new file is followed from its start. When the file gets shorter,
+ * it is read again from the start.
+ */
+public final class FileFollower implements Closeable {
+    private static final long POLL_MILLIS = 500;
+    private static final int READ_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final WatchService watcher;
+    private final ByteBuffer buffer = ByteBuffer.allocate(READ_BYTES);
+    private FileChannel channel;
+    // Identity of the open file, to notice when the path points to another one
+    private Object identity;
+    private long position;
+    // Start of a line whose line break was not written yet
+    private byte[] line = new byte[256];
+    private int lineLength;
+
+    /**
+     * Start following a file.
+     *
+     * @param file File to follow
+     * @param position Position to read from, usually the size of the part already shown
+     * @throws IOException If the file cannot be opened
+     */
+    public FileFollower(Path file, long position) throws IOException {
+        this.file = file;
+        this.position = position;
+        open();
+        watcher = watch(file);
+    }
+
+    private static WatchService watch(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            // Polling only
+            return null;
+        }
+    }
+
+    private void open() throws IOException {
+        FileChannel opened = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            identity = identify(Files.readAttributes(file, BasicFileAttributes.class));
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+    }
+
+    private static Object identify(BasicFileAttributes attributes) {
+        // There is no file key on some systems, the creation time tells files apart there
+        return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    }
+
+    /**
+     * Pass on appended lines until the consumer stops or the thread is interrupted.
+     *
+     * @param lines Receives the appended lines, returns false to stop
+     * @param notices Receives a message when the file was replaced or truncated;
+     *        the lines passed on after it start at the beginning of the file
+     * @throws IOException If the file cannot be read
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public void follow(Predicate<String> lines, Consumer<String> notices) throws IOException, InterruptedException {
+        while (true) {
+            if (!readAppended(lines)) {
+                return;
+            }
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // Moved away, wait for the new file
+                attributes = null;
+            }
+            if (attributes != null && !identify(attributes).equals(identity)) {
+                // Everything of the old file was read above
+                FileChannel old = channel;
+                try {
+                    open();
+                } catch (NoSuchFileException e) {
+                    // Moved away again meanwhile
+                    await();
+                    continue;
+                }
+                old.close();
+                position = 0;
+                lineLength = 0;
+                notices.accept("--- " + file + " was replaced, following the new file ---");
+                continue;
+            }
+            if (attributes != null && attributes.size() < position) {
+                position = 0;
+                lineLength = 0;
+                notices.accept("--- " + file + " was truncated, reading from the start ---");
+                continue;
+            }
+            await();
+        }
+    }
+
+    /**
+     * Read the bytes appended since the last read and pass on the complete lines.
+     *
+     * @return false if the consumer stopped
+     */
+    private boolean readAppended(Predicate<String> lines) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return true;
+            }
+            position += read;
+            byte[] bytes = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    append(bytes, lineStart, i);
+                    if (Thread.currentThread().isInterrupted() || !lines.test(takeLine())) {
+                        return false;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            append(bytes, lineStart, read);
+        }
+    }
+
+    /**
+     * Wait until the directory of the file changes or the poll interval has passed.
+     */
+    private void await() throws InterruptedException {
+        if (watcher == null) {
+            Thread.sleep(POLL_MILLIS);
+            return;
+        }
+        WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (key != null) {
+            // Any change is checked by reading, the events themselves do not matter
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    private void append(byte[] bytes, int from, int to) {
+        int length = Math.min(to - from, MappedLineReader.MAX_LINE_BYTES - lineLength);
+        if (length <= 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(bytes, from, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private String takeLine() {
+        int length = lineLength;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+        channel.close();
+    }
+}
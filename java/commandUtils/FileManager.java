@@ -4,23 +4,31 @@ import java.awt.Desktop;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * Manages file operations for the console application.
  */
 public class FileManager {
-    // Current working directory
-    private static Path currentDirectory = Paths.get(System.getProperty("user.dir"));
+    // Current working directory, read by commands running on other threads
+    private static volatile Path currentDirectory = Paths.get(System.getProperty("user.dir"));
+    // Number of running parallel command groups; the directory cannot change while positive
+    private static final AtomicInteger directoryFreezes = new AtomicInteger();
     
     /**
      * Get the current working directory.
@@ -64,16 +72,41 @@ public class FileManager {
      * Set the current working directory.
      * 
      * @param directory New current directory path
-     * @return true if successful, false otherwise
+     * @return true if successful, false otherwise (including while the directory is frozen)
      */
-    public static boolean setCurrentDirectory(Path directory) {
-        if (Files.isDirectory(directory)) {
+    public static synchronized boolean setCurrentDirectory(Path directory) {
+        if (directoryFreezes.get() == 0 && Files.isDirectory(directory)) {
             currentDirectory = directory;
             return true;
         }
         return false;
     }
     
+    /**
+     * Keep the current directory from changing until {@link #unfreezeCurrentDirectory()}
+     * is called. Used while commands run in parallel so they all resolve relative
+     * paths against the same directory.
+     */
+    public static synchronized void freezeCurrentDirectory() {
+        directoryFreezes.incrementAndGet();
+    }
+    
+    /**
+     * Undo one call to {@link #freezeCurrentDirectory()}.
+     */
+    public static void unfreezeCurrentDirectory() {
+        directoryFreezes.decrementAndGet();
+    }
+    
+    /**
+     * Check whether the current directory is frozen.
+     * 
+     * @return true if the current directory cannot be changed right now
+     */
+    public static boolean isCurrentDirectoryFrozen() {
+        return directoryFreezes.get() > 0;
+    }
+    
     /**
      * Resolve a path string against the current directory.
      * Handles relative and absolute paths.
@@ -98,11 +131,24 @@ public class FileManager {
      * @throws IOException If an I/O error occurs
      */
     public static List<String> readFile(Path filePath) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath.toFile()))) {
+        try (BufferedReader reader = openReader(filePath)) {
             return reader.lines().collect(Collectors.toList());
         }
     }
     
+    /**
+     * Open a file for reading line by line, decoding it as UTF-8.
+     * Lets callers process large files without loading them into memory.
+     * 
+     * @param filePath Path to the file
+     * @return Reader for the file, to be closed by the caller
+     * @throws IOException If an I/O error occurs
+     */
+    public static BufferedReader openReader(Path filePath) throws IOException {
+        // Malformed input is replaced rather than failing the read
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(filePath), StandardCharsets.UTF_8));
+    }
+    
     /**
      * Write content to a file.
      * 
@@ -129,18 +175,33 @@ public class FileManager {
      */
     public static List<String> listDirectory(Path directory) throws IOException {
         List<String> result = new ArrayList<>();
-        File[] files = directory.toFile().listFiles();
-        
-        if (files != null) {
-            for (File file : files) {
-                String entry = file.getName();
-                if (file.isDirectory()) {
-                    entry += "/";
+        for (FileEntry entry : listEntries(directory)) {
+            result.add(entry.getDisplayName());
+        }
+        return result;
+    }
+    
+    /**
+     * List a directory with the attributes of its entries.
+     * The attributes of every entry are read in a single call.
+     * 
+     * @param directory Directory to list
+     * @return Entries in no particular order
+     * @throws IOException If the directory cannot be read
+     */
+    public static List<FileEntry> listEntries(Path directory) throws IOException {
+        Set<String> views = directory.getFileSystem().supportedFileAttributeViews();
+        String view = views.contains("posix") ? "posix" : views.contains("dos") ? "dos" : "basic";
+        List<FileEntry> result = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                try {
+                    result.add(FileEntry.read(entry, view));
+                } catch (NoSuchFileException e) {
+                    // Deleted while listing
                 }
-                result.add(entry);
             }
         }
-        
         return result;
     }
     
@@ -170,27 +231,21 @@ public class FileManager {
     }
     
     /**
-     * Delete a file or directory.
+     * Delete a file or directory, including everything in it.
+     * See {@link TreeDeleter} for progress and the entries that could not be deleted.
      * 
      * @param path Path to delete
      * @return true if successful, false otherwise
      */
     public static boolean delete(Path path) {
+        TreeDeleter deleter = new TreeDeleter();
         try {
-            if (Files.isDirectory(path)) {
-                Files.list(path).forEach(p -> {
-                    try {
-                        delete(p);
-                    } catch (Exception e) {
-                        // Ignore
-                    }
-                });
-            }
-            Files.delete(path);
-            return true;
-        } catch (IOException e) {
+            deleter.delete(path, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
+        return deleter.getFailures().isEmpty();
     }
     
     /**
@@ -319,15 +374,18 @@ public class FileManager {
             return;
         }
         
-        Files.walk(directory)
-            .sorted((a, b) -> b.toString().length() - a.toString().length()) // Sort by descending path length to delete inner files first
-            .forEach(path -> {
-                try {
-                    Files.delete(path);
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to delete: " + path, e);
-                }
-            });
+        TreeDeleter deleter = new TreeDeleter();
+        try {
+            deleter.delete(directory, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Deletion interrupted: " + directory);
+        }
+        List<String> failures = deleter.getFailures();
+        if (!failures.isEmpty()) {
+            throw new IOException("Failed to delete " + failures.get(0)
+                + (failures.size() > 1 ? " and " + (failures.size() - 1) + " more" : ""));
+        }
     }
     
 }    
@@ -0,0 +1,723 @@
+package commandUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cache store keeping all entries in memory and persisting them write-behind
+ * through a journal. Every change is encoded as a journal record and queued;
+ * a background thread appends the queued records once per interval, or as soon
+ * as the configured number of changes has accumulated, so a burst of changes
+ * costs a single small write. Pending records are also written on shutdown.
+ *
+ * Once the journal grows past the compaction threshold and the size of the last
+ * snapshot, the background thread writes a new snapshot and empties the journal,
+ * so the cost of a snapshot is spread over at least as many bytes of changes.
+ *
+ * Several processes can share the files. Writes happen under a file lock, and
+ * before writing, the changes the other processes wrote meanwhile are merged into
+ * the entries; changes of this process that are not written yet win, since they
+ * are written after them. A watch on the directory merges changes of other
+ * processes as soon as they are written, the periodic write picks them up too.
+ */
+public class JournalCacheStore implements CacheStore {
+    private final Map<String, Object> data = new ConcurrentHashMap<>();
+    // Expiry times of the entries that have one, changed together with data
+    private final Map<String, Long> expirations = new ConcurrentHashMap<>();
+    private final CacheJournal journal;
+    private final ObjectMapper objectMapper;
+    private final long batchSize;
+    private final long compactThreshold;
+    private final ScheduledExecutorService writer;
+    private final Object writeLock = new Object();
+    private volatile Durability durability;
+
+    // Records not written yet, guarded by data; the map and the queue change together
+    private Pending pending = new Pending();
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+    private volatile Consumer<String> remoteChangeListener;
+    private volatile WatchService watcher;
+    // Set if the files could not be loaded; nothing is written to them then
+    private volatile IOException loadFailure;
+
+    // Guarded by writeLock
+    private boolean compactionScheduled;
+    private long writes;
+    private long totalWriteMicros;
+    private long recordsWritten;
+    private long compactions;
+    private long lastWriteMicros;
+    private long lastCompactionMicros;
+    private long merged;
+
+    /**
+     * Create a journal store. Call {@link #load(File)} before using it.
+     *
+     * @param journalFile File receiving the changes
+     * @param snapshotFile File holding the last snapshot
+     * @param objectMapper Mapper used to encode values
+     * @param durability Initial durability mode
+     * @param intervalMillis Maximum time between a change and its background write
+     * @param batchSize Number of changes that triggers a background write right away
+     * @param compactThreshold Journal size in bytes from which a snapshot is written
+     */
+    public JournalCacheStore(Path journalFile, Path snapshotFile, ObjectMapper objectMapper, Durability durability,
+            long intervalMillis, long batchSize, long compactThreshold) {
+        this.journal = new CacheJournal(journalFile, snapshotFile, objectMapper);
+        this.objectMapper = objectMapper;
+        this.durability = durability;
+        this.batchSize = Math.max(1, batchSize);
+        this.compactThreshold = compactThreshold;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = Math.max(1, intervalMillis);
+        writer.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        // Daemon threads do not finish their work, write what is left when the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "cache-shutdown"));
+    }
+
+    @Override
+    public void load(File legacyFile) {
+        synchronized (writeLock) {
+            try {
+                FileLock lock = journal.lock();
+                try {
+                    if (journal.isEmpty() && legacyFile.exists()) {
+                        migrate(legacyFile);
+                    } else {
+                        journal.load(data, expirations);
+                    }
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                loadFailure = e;
+                System.err.println("Error loading cache: " + e.getMessage() + ", changes will not be saved");
+                return;
+            }
+        }
+        watch();
+    }
+
+    /**
+     * Merge the changes of other processes as soon as they touch the files.
+     */
+    private void watch() {
+        Path[] files = journal.getFiles();
+        Set<Path> names = new HashSet<>();
+        for (Path file : files) {
+            names.add(file.getFileName());
+        }
+        Path directory = files[0].toAbsolutePath().getParent();
+        try {
+            watcher = directory.getFileSystem().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            // The periodic write still merges the changes of other processes
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || names.contains(event.context());
+                    }
+                    key.reset();
+                    // Events of own writes are cheap, the merge finds nothing new
+                    if (changed && mergeScheduled.compareAndSet(false, true)) {
+                        writer.execute(() -> {
+                            mergeScheduled.set(false);
+                            flushQuietly();
+                        });
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException | RejectedExecutionException e) {
+                // Shut down
+            }
+        }, "cache-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void migrate(File legacyFile) throws IOException {
+        Map<String, Object> entries = objectMapper.readValue(legacyFile,
+            new TypeReference<Map<String, Object>>(){});
+        journal.load(data, expirations);
+        if (entries != null) {
+            data.putAll(entries);
+        }
+        // Keep the JSON file until the snapshot holds its entries
+        journal.compact(data, expirations);
+        Path legacyPath = legacyFile.toPath();
+        Files.move(legacyPath, legacyPath.resolveSibling(legacyPath.getFileName() + ".bak"),
+            StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public Object get(String key) {
+        Object value = data.get(key);
+        return value != null && isExpired(key, System.currentTimeMillis()) ? null : value;
+    }
+
+    private boolean isExpired(String key, long now) {
+        if (expirations.isEmpty()) {
+            return false;
+        }
+        Long expiresAt = expirations.get(key);
+        return expiresAt != null && expiresAt <= now;
+    }
+
+    /**
+     * Refuse to store values when the files could not be loaded. The records could
+     * never be written and would pile up in the queue.
+     */
+    private void checkLoaded(String key) {
+        IOException failure = loadFailure;
+        if (failure != null) {
+            throw new UncheckedIOException("Cannot save " + key + " to the cache", failure);
+        }
+    }
+
+    @Override
+    public void put(String key, Object value, long expiresAt) {
+        checkLoaded(key);
+        byte[] record;
+        try {
+            record = journal.encodePut(key, value, expiresAt);
+        } catch (IOException e) {
+            // Kept out of memory too, it could never be persisted
+            throw new UncheckedIOException("Cannot save " + key + " to the cache", e);
+        }
+        synchronized (data) {
+            data.put(key, value);
+            if (expiresAt > 0) {
+                expirations.put(key, expiresAt);
+            } else {
+                expirations.remove(key);
+            }
+            pending.add(record, key);
+        }
+        changed();
+    }
+
+    @Override
+    public void update(Map<String, Object> puts, Collection<String> removals) {
+        for (String key : puts.keySet()) {
+            checkLoaded(key);
+        }
+        List<byte[]> records = new ArrayList<>(puts.size() + removals.size());
+        for (Map.Entry<String, Object> entry : puts.entrySet()) {
+            try {
+                records.add(journal.encodePut(entry.getKey(), entry.getValue(), 0));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot save " + entry.getKey() + " to the cache", e);
+            }
+        }
+        for (String key : removals) {
+            records.add(journal.encodeRemove(key));
+        }
+        synchronized (data) {
+            data.putAll(puts);
+            for (String key : puts.keySet()) {
+                expirations.remove(key);
+            }
+            for (String key : removals) {
+                data.remove(key);
+                expirations.remove(key);
+            }
+            // Only removals get here if the files could not be loaded
+            if (loadFailure == null) {
+                pending.records.add(journal.encodeBatch(records));
+                pending.keys.addAll(puts.keySet());
+                pending.keys.addAll(removals);
+            }
+        }
+        changed();
+    }
+
+    @Override
+    public boolean remove(String key) {
+        synchronized (data) {
+            if (data.remove(key) == null) {
+                return false;
+            }
+            expirations.remove(key);
+            queueRemove(key);
+        }
+        changed();
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (data) {
+            data.clear();
+            expirations.clear();
+            // Nothing queued before matters anymore
+            pending = new Pending();
+            if (loadFailure == null) {
+                pending.clear = true;
+                pending.records.add(journal.encodeClear());
+            }
+        }
+        changed();
+    }
+
+    @Override
+    public List<String> removeExpired(long now) {
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, Long> expiration : expirations.entrySet()) {
+            if (expiration.getValue() > now) {
+                continue;
+            }
+            String key = expiration.getKey();
+            synchronized (data) {
+                // Check again, the entry may have been stored again in the meantime
+                if (isExpired(key, now) && data.remove(key) != null) {
+                    expirations.remove(key);
+                    queueRemove(key);
+                    removed.add(key);
+                }
+            }
+        }
+        if (!removed.isEmpty()) {
+            changed();
+        }
+        return removed;
+    }
+
+    /**
+     * Queue the removal of a key, unless the files could not be loaded; a removal
+     * is still made in memory then. Called while holding the lock of data.
+     */
+    private void queueRemove(String key) {
+        if (loadFailure == null) {
+            pending.add(journal.encodeRemove(key), key);
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return data.containsKey(key) && !isExpired(key, System.currentTimeMillis());
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public Map<String, Object> getAll() {
+        Map<String, Object> entries = new HashMap<>(data);
+        if (!expirations.isEmpty()) {
+            long now = System.currentTimeMillis();
+            entries.keySet().removeIf(key -> isExpired(key, now));
+        }
+        return entries;
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Object> action) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if (!isExpired(entry.getKey(), now)) {
+                action.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        long now = System.currentTimeMillis();
+        for (String key : data.keySet()) {
+            if (!isExpired(key, now)) {
+                action.accept(key);
+            }
+        }
+    }
+
+    private void changed() {
+        if (durability != Durability.ASYNC) {
+            flushQuietly();
+            return;
+        }
+
+        int queued;
+        synchronized (data) {
+            queued = pending.records.size();
+        }
+        // Concurrent changes can step past the batch size, the flush is due then as well
+        if (queued >= batchSize) {
+            try {
+                writer.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                // Shut down already, write on the calling thread
+                flushQuietly();
+            }
+        }
+    }
+
+    /**
+     * Merge the changes of other processes and write pending changes now.
+     */
+    @Override
+    public void flush() throws IOException {
+        List<String> changed;
+        synchronized (writeLock) {
+            boolean idle;
+            synchronized (data) {
+                idle = pending.records.isEmpty();
+            }
+            if (idle && !journal.hasNewChanges()) {
+                return;
+            }
+
+            Pending records;
+            FileLock lock = journal.lock();
+            try {
+                changed = merge();
+                records = takePending();
+                if (!records.records.isEmpty()) {
+                    long start = System.nanoTime();
+                    try {
+                        journal.append(concat(records.records), durability == Durability.FSYNC);
+                    } catch (IOException | RuntimeException e) {
+                        // Keep the records pending so the next flush tries again
+                        requeue(records);
+                        throw e;
+                    }
+                    writes++;
+                    recordsWritten += records.records.size();
+                    lastWriteMicros = (System.nanoTime() - start) / 1000;
+                    totalWriteMicros += lastWriteMicros;
+                }
+            } finally {
+                lock.release();
+            }
+
+            if (!records.records.isEmpty() && !compactionScheduled
+                    && journal.getJournalSize() > Math.max(compactThreshold, journal.getSnapshotSize())) {
+                scheduleCompaction();
+            }
+        }
+        notifyRemoteChanges(changed);
+    }
+
+    /**
+     * Apply the changes other processes wrote since the last merge. Called while
+     * holding the file lock. Keys with pending changes keep their value, and after a
+     * pending clear nothing is merged: these changes are written later and win.
+     *
+     * @return Keys changed by other processes; null stands for all keys
+     */
+    private List<String> merge() throws IOException {
+        List<CacheJournal.Change> changes = journal.readNewChanges();
+        List<String> changed = new ArrayList<>();
+        if (changes == null) {
+            // Another process wrote a snapshot, compare all entries
+            Map<String, Object> entries = new HashMap<>();
+            Map<String, Long> entryExpirations = new HashMap<>();
+            journal.reload(entries, entryExpirations);
+            synchronized (data) {
+                if (!pending.clear) {
+                    for (String key : new ArrayList<>(data.keySet())) {
+                        if (!entries.containsKey(key) && !pending.keys.contains(key)) {
+                            data.remove(key);
+                            expirations.remove(key);
+                            changed.add(key);
+                        }
+                    }
+                    for (Map.Entry<String, Object> entry : entries.entrySet()) {
+                        String key = entry.getKey();
+                        Long expiresAt = entryExpirations.get(key);
+                        if (!pending.keys.contains(key) && (!entry.getValue().equals(data.get(key))
+                                || !Objects.equals(expiresAt, expirations.get(key)))) {
+                            new CacheJournal.Change(key, entry.getValue(), expiresAt != null ? expiresAt : 0)
+                                .applyTo(data, expirations);
+                            changed.add(key);
+                        }
+                    }
+                }
+            }
+        } else {
+            synchronized (data) {
+                for (CacheJournal.Change change : changes) {
+                    if (pending.clear) {
+                        break;
+                    }
+                    if (change.isClear()) {
+                        data.keySet().removeIf(key -> !pending.keys.contains(key));
+                        expirations.keySet().removeIf(key -> !pending.keys.contains(key));
+                        changed.add(null);
+                    } else if (!pending.keys.contains(change.getKey())) {
+                        change.applyTo(data, expirations);
+                        changed.add(change.getKey());
+                    }
+                }
+            }
+        }
+        merged += changed.size();
+        return changed;
+    }
+
+    private void notifyRemoteChanges(List<String> changed) {
+        Consumer<String> listener = remoteChangeListener;
+        if (listener != null) {
+            for (String key : changed) {
+                listener.accept(key);
+            }
+        }
+    }
+
+    @Override
+    public void setRemoteChangeListener(Consumer<String> listener) {
+        remoteChangeListener = listener;
+    }
+
+    private void scheduleCompaction() {
+        try {
+            writer.execute(this::compactQuietly);
+            compactionScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the journal is replayed at the next start
+        }
+    }
+
+    /**
+     * Write a snapshot of all entries and empty the journal.
+     *
+     * @throws IOException If the snapshot cannot be written
+     */
+    public void compact() throws IOException {
+        List<String> changed;
+        synchronized (writeLock) {
+            compactionScheduled = false;
+            FileLock lock = journal.lock();
+            try {
+                changed = merge();
+                Map<String, Object> entries;
+                Map<String, Long> entryExpirations;
+                Pending records;
+                synchronized (data) {
+                    // The copy holds exactly the changes taken from the queue
+                    entries = new HashMap<>(data);
+                    entryExpirations = new HashMap<>(expirations);
+                    records = takePending();
+                }
+
+                long start = System.nanoTime();
+                try {
+                    journal.compact(entries, entryExpirations);
+                } catch (IOException | RuntimeException e) {
+                    requeue(records);
+                    throw e;
+                }
+                recordsWritten += records.records.size();
+                compactions++;
+                lastCompactionMicros = (System.nanoTime() - start) / 1000;
+            } finally {
+                lock.release();
+            }
+        }
+        notifyRemoteChanges(changed);
+    }
+
+    @Override
+    public void shutdown() {
+        WatchService service = watcher;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                // Nothing left to do
+            }
+        }
+        writer.shutdown();
+        flushQuietly();
+    }
+
+    /**
+     * Get the durability mode.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Change the durability mode. Pending changes are written right away when
+     * switching to a synchronous mode.
+     *
+     * @param durability New durability mode
+     */
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+        if (durability != Durability.ASYNC) {
+            flushQuietly();
+        }
+    }
+
+    @Override
+    public long getFlushCount() {
+        synchronized (writeLock) {
+            return writes;
+        }
+    }
+
+    @Override
+    public long getFlushMicros() {
+        synchronized (writeLock) {
+            return totalWriteMicros;
+        }
+    }
+
+    @Override
+    public long getLastFlushMicros() {
+        synchronized (writeLock) {
+            return lastWriteMicros;
+        }
+    }
+
+    @Override
+    public long getDiskSize() {
+        synchronized (writeLock) {
+            try {
+                return journal.getJournalSize() + journal.getSnapshotSize();
+            } catch (IOException e) {
+                return journal.getSnapshotSize();
+            }
+        }
+    }
+
+    @Override
+    public long getHeapSize() {
+        long size = 0;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            size += CacheEviction.weigh(entry.getKey(), entry.getValue());
+        }
+        // A boxed expiry time and its map entry
+        return size + 48L * expirations.size();
+    }
+
+    @Override
+    public String getStats() {
+        int queued;
+        synchronized (data) {
+            queued = pending.records.size();
+        }
+        synchronized (writeLock) {
+            long journalSize;
+            try {
+                journalSize = journal.getJournalSize();
+            } catch (IOException e) {
+                journalSize = -1;
+            }
+            return "durability: " + durability.name().toLowerCase(Locale.ROOT) + ", writes: " + writes
+                    + ", records written: " + recordsWritten + ", pending: " + queued
+                    + ", merged from other processes: " + merged
+                    + ", expiring: " + expirations.size()
+                    + ", last write: " + lastWriteMicros + " us, journal: " + journalSize
+                    + " bytes, snapshot: " + journal.getSnapshotSize() + " bytes, compactions: " + compactions
+                    + ", last compaction: " + lastCompactionMicros + " us";
+        }
+    }
+
+    private Pending takePending() {
+        synchronized (data) {
+            Pending records = pending;
+            pending = new Pending();
+            return records;
+        }
+    }
+
+    private void requeue(Pending records) {
+        synchronized (data) {
+            records.records.addAll(pending.records);
+            records.keys.addAll(pending.keys);
+            records.clear |= pending.clear;
+            pending = records;
+        }
+    }
+
+    private static ByteBuffer concat(List<byte[]> records) {
+        int length = 0;
+        for (byte[] record : records) {
+            length += record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] record : records) {
+            buffer.put(record);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void flushQuietly() {
+        // Must not throw, an exception would cancel the periodic flush
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error saving cache: " + e.getMessage());
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error compacting cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records not written yet and the keys they change.
+     */
+    private static final class Pending {
+        private final List<byte[]> records = new ArrayList<>();
+        private final Set<String> keys = new HashSet<>();
+        // Whether the records remove all keys first
+        private boolean clear;
+
+        void add(byte[] record, String key) {
+            records.add(record);
+            keys.add(key);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package commandUtils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evicts the least frequently used key; among keys used equally often, the one
+ * that reached that frequency first.
+ */
+final class LfuPolicy implements EvictionPolicy {
+    private final Map<String, Integer> frequencies = new HashMap<>();
+    // Keys by frequency, each bucket in the order the keys reached it
+    private final TreeMap<Integer, LinkedHashSet<String>> buckets = new TreeMap<>();
+
+    @Override
+    public void recordWrite(String key) {
+        if (frequencies.containsKey(key)) {
+            recordAccess(key);
+        } else {
+            frequencies.put(key, 1);
+            buckets.computeIfAbsent(1, frequency -> new LinkedHashSet<>()).add(key);
+        }
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        Integer frequency = frequencies.get(key);
+        if (frequency == null) {
+            return;
+        }
+        removeFromBucket(key, frequency);
+        frequencies.put(key, frequency + 1);
+        buckets.computeIfAbsent(frequency + 1, f -> new LinkedHashSet<>()).add(key);
+    }
+
+    @Override
+    public void recordRemove(String key) {
+        Integer frequency = frequencies.remove(key);
+        if (frequency != null) {
+            removeFromBucket(key, frequency);
+        }
+    }
+
+    @Override
+    public void clear() {
+        frequencies.clear();
+        buckets.clear();
+    }
+
+    @Override
+    public String selectVictim() {
+        Map.Entry<Integer, LinkedHashSet<String>> lowest = buckets.firstEntry();
+        if (lowest == null) {
+            return null;
+        }
+        Iterator<String> keys = lowest.getValue().iterator();
+        String victim = keys.next();
+        keys.remove();
+        if (lowest.getValue().isEmpty()) {
+            buckets.remove(lowest.getKey());
+        }
+        frequencies.remove(victim);
+        return victim;
+    }
+
+    private void removeFromBucket(String key, int frequency) {
+        LinkedHashSet<String> bucket = buckets.get(frequency);
+        bucket.remove(key);
+        if (bucket.isEmpty()) {
+            buckets.remove(frequency);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "lfu";
+    }
+}
@@ -0,0 +1,48 @@
+package commandUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used key.
+ */
+final class LruPolicy implements EvictionPolicy {
+    // Access-ordered, the eldest key comes first
+    private final LinkedHashMap<String, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void recordWrite(String key) {
+        order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        order.get(key);
+    }
+
+    @Override
+    public void recordRemove(String key) {
+        order.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+
+    @Override
+    public String selectVictim() {
+        Iterator<String> keys = order.keySet().iterator();
+        if (!keys.hasNext()) {
+            return null;
+        }
+        String victim = keys.next();
+        keys.remove();
+        return victim;
+    }
+
+    @Override
+    public String getName() {
+        return "lru";
+    }
+}
@@ -0,0 +1,898 @@
+package commandUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cache store keeping the entries in a memory-mapped file instead of on the heap.
+ * Opening the store only maps the file, and lookups read the key and value
+ * straight from the mapping, so neither startup time nor heap usage grows with
+ * the number of entries.
+ *
+ * The file consists of a header, an open-addressing hash index with linear
+ * probing, and an append-only data area:
+ * <pre>
+ * header  magic, slot count, entry count, removed slots, end of data, garbage bytes,
+ *         number of entries with an expiry time
+ * index   per slot: record offset (0 = empty, -1 = removed), key hash
+ * data    per record: key length, value length, expiry time (0 = none), UTF-8 key, value as JSON
+ * </pre>
+ * Updates append a new record and repoint the slot. A batch appends all of its
+ * records before it repoints any slot, and the header makes them part of the
+ * data only afterwards. When the index gets too full
+ * or more than half of the data is garbage, the file is rebuilt into a temporary
+ * file which is then copied over the mapped one; an interrupted copy is finished
+ * at the next start.
+ *
+ * Writes go to the OS page cache immediately and survive a crash of the
+ * application; in fsync mode every change is also forced to the device.
+ * The file is limited to 2 GB and does not shrink.
+ *
+ * The mapping is used by one process at a time; a second process fails to open
+ * the store. Use the journal store to share the cache between processes.
+ */
+public class MappedCacheStore implements CacheStore {
+    private static final int MAGIC = 0x43584D31; // "CXM1"
+    private static final int HEADER_LENGTH = 64;
+    private static final int SLOT_LENGTH = 16;
+    private static final int RECORD_HEADER_LENGTH = 16;
+    private static final int MIN_SLOTS = 1024;
+    private static final int INITIAL_DATA_LENGTH = 64 * 1024;
+    private static final long MIN_GARBAGE_FOR_REBUILD = 1024 * 1024;
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+
+    // Header fields
+    private static final int H_MAGIC = 0;
+    private static final int H_SLOTS = 4;
+    private static final int H_COUNT = 8;
+    private static final int H_REMOVED = 12;
+    private static final int H_DATA_END = 16;
+    private static final int H_GARBAGE = 24;
+    private static final int H_EXPIRING = 32;
+
+    private final Path file;
+    private final Path rebuildFile;
+    private final Path lockFile;
+    private final CacheJournal journalToImport;
+    private final ObjectMapper objectMapper;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Durability durability;
+
+    // Guarded by lock, the header fields are kept in sync with the file
+    private FileChannel channel;
+    // Held while the process runs, keeps other processes out
+    private FileChannel lockChannel;
+    private MappedByteBuffer buffer;
+    private int slots;
+    private int count;
+    private int removed;
+    private long dataEnd;
+    private long garbage;
+    private int expiring;
+    private long rebuilds;
+    private final LongAdder forces = new LongAdder();
+    private final LongAdder forceMicros = new LongAdder();
+    private volatile long lastForceMicros;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder probes = new LongAdder();
+
+    /**
+     * Create a mapped store. Call {@link #load(File)} before using it.
+     *
+     * @param file Cache file
+     * @param journalFile Journal of the journal store, imported when the cache file is created
+     * @param snapshotFile Snapshot of the journal store, imported when the cache file is created
+     * @param objectMapper Mapper used to encode values
+     * @param durability Durability mode
+     */
+    public MappedCacheStore(Path file, Path journalFile, Path snapshotFile, ObjectMapper objectMapper,
+            Durability durability) {
+        this.file = file;
+        this.rebuildFile = file.resolveSibling(file.getFileName() + ".rebuild");
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        this.journalToImport = new CacheJournal(journalFile, snapshotFile, objectMapper);
+        this.objectMapper = objectMapper;
+        this.durability = durability;
+    }
+
+    @Override
+    public void load(File legacyFile) {
+        lock.writeLock().lock();
+        try {
+            if (open()) {
+                importEntries(legacyFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading cache: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Open and map the cache file, creating it if necessary.
+     *
+     * @return true if the file was created and still has to be filled
+     */
+    private boolean open() throws IOException {
+        lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (lockChannel.tryLock() == null) {
+            lockChannel.close();
+            lockChannel = null;
+            throw new IOException(file + " is in use by another process, start with -Dconsolex.cache.store=journal"
+                + " to share the cache");
+        }
+        finishRebuild();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+
+        // The magic is written last, a file without it was never completely created
+        if (channel.size() < HEADER_LENGTH || map(channel.size()).getInt(H_MAGIC) != MAGIC) {
+            format(MIN_SLOTS);
+            return true;
+        }
+
+        slots = buffer.getInt(H_SLOTS);
+        count = buffer.getInt(H_COUNT);
+        removed = buffer.getInt(H_REMOVED);
+        dataEnd = buffer.getLong(H_DATA_END);
+        garbage = buffer.getLong(H_GARBAGE);
+        expiring = buffer.getInt(H_EXPIRING);
+        return false;
+    }
+
+    /**
+     * Import the entries of the journal store or of the JSON file of earlier
+     * versions, then rename the imported files to *.bak.
+     */
+    private void importEntries(File legacyFile) throws IOException {
+        Map<String, Object> entries = new HashMap<>();
+        Map<String, Long> expirations = new HashMap<>();
+        Path[] imported;
+        if (!journalToImport.isEmpty()) {
+            journalToImport.read(entries, expirations);
+            imported = journalToImport.getFiles();
+        } else if (legacyFile.exists()) {
+            Map<String, Object> legacy = objectMapper.readValue(legacyFile,
+                new TypeReference<Map<String, Object>>(){});
+            if (legacy != null) {
+                entries.putAll(legacy);
+            }
+            imported = new Path[] {legacyFile.toPath()};
+        } else {
+            imported = new Path[0];
+        }
+
+        // Size the index for all entries up front, a rebuild would write the magic too early
+        format(slotsFor(entries.size()));
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            Long expiresAt = expirations.get(entry.getKey());
+            store(entry.getKey(), objectMapper.writeValueAsBytes(entry.getValue()), expiresAt != null ? expiresAt : 0);
+        }
+        buffer.putInt(H_MAGIC, MAGIC);
+        buffer.force();
+
+        for (Path path : imported) {
+            if (Files.exists(path)) {
+                Files.move(path, path.resolveSibling(path.getFileName() + ".bak"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Reset the file to an empty index of the given size. The magic is left to the caller.
+     */
+    private void format(int slotCount) throws IOException {
+        long dataStart = dataStart(slotCount);
+        if (buffer == null || buffer.capacity() < dataStart + INITIAL_DATA_LENGTH) {
+            map(dataStart + INITIAL_DATA_LENGTH);
+        }
+
+        // Zero the header and the index, the data area is overwritten as records are added
+        byte[] zeros = new byte[8192];
+        ByteBuffer target = buffer.duplicate();
+        target.position(0);
+        for (long remaining = dataStart; remaining > 0; remaining -= zeros.length) {
+            target.put(zeros, 0, (int) Math.min(zeros.length, remaining));
+        }
+
+        slots = slotCount;
+        count = 0;
+        removed = 0;
+        dataEnd = dataStart;
+        garbage = 0;
+        expiring = 0;
+        writeHeader();
+    }
+
+    private MappedByteBuffer map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Cache file " + file + " cannot grow beyond 2 GB");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return buffer;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(H_SLOTS, slots);
+        buffer.putInt(H_COUNT, count);
+        buffer.putInt(H_REMOVED, removed);
+        buffer.putLong(H_DATA_END, dataEnd);
+        buffer.putLong(H_GARBAGE, garbage);
+        buffer.putInt(H_EXPIRING, expiring);
+    }
+
+    @Override
+    public Object get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.readLock().lock();
+        try {
+            if (buffer == null) {
+                return null;
+            }
+            lookups.increment();
+            int slot = findSlot(keyBytes, hash, true);
+            if (slot < 0) {
+                return null;
+            }
+            int offset = (int) buffer.getLong(slotPosition(slot));
+            return isExpired(offset, System.currentTimeMillis()) ? null : readValue(offset);
+        } catch (IOException e) {
+            System.err.println("Error reading cache: " + e.getMessage());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(String key, Object value, long expiresAt) {
+        byte[] encoded = encode(key, value);
+        lock.writeLock().lock();
+        try {
+            if (buffer == null) {
+                throw new IOException("Cache file " + file + " is not open");
+            }
+            store(key, encoded, expiresAt);
+            rebuildQuietly();
+            changed();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save " + key + " to the cache", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void update(Map<String, Object> puts, Collection<String> removals) {
+        // Everything is encoded first, so a value that cannot be leaves the store unchanged
+        Map<String, byte[]> encoded = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : puts.entrySet()) {
+            encoded.put(entry.getKey(), encode(entry.getKey(), entry.getValue()));
+        }
+        lock.writeLock().lock();
+        try {
+            if (buffer == null) {
+                throw new IOException("Cache file " + file + " is not open");
+            }
+            // Make room for the whole batch first, so no rebuild runs while it is applied
+            long length = 0;
+            for (Map.Entry<String, byte[]> entry : encoded.entrySet()) {
+                length += RECORD_HEADER_LENGTH + entry.getKey().getBytes(StandardCharsets.UTF_8).length
+                    + entry.getValue().length;
+            }
+            if (2L * (count + removed + encoded.size()) > slots) {
+                rebuild(Math.max(slots, slotsFor(count + encoded.size())));
+            }
+            ensureCapacity(dataEnd + length);
+
+            // Append every record, then repoint the slots in one step
+            List<Integer> offsets = new ArrayList<>();
+            long end = dataEnd;
+            for (Map.Entry<String, byte[]> entry : encoded.entrySet()) {
+                offsets.add((int) end);
+                end += append((int) end, entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue(), 0);
+            }
+            // The records are part of the data before any slot refers to them
+            dataEnd = end;
+            writeHeader();
+            int index = 0;
+            for (String key : encoded.keySet()) {
+                point(key, offsets.get(index++), 0);
+            }
+            for (String key : removals) {
+                int slot = findSlot(key.getBytes(StandardCharsets.UTF_8), hash(key), false);
+                if (slot >= 0) {
+                    removeSlot(slot);
+                }
+            }
+            writeHeader();
+            rebuildQuietly();
+            changed();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save the changes to the cache", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private byte[] encode(String key, Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save " + key + " to the cache", e);
+        }
+    }
+
+    /**
+     * Append a record and point the slot of the key at it.
+     */
+    private void store(String key, byte[] value, long expiresAt) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(dataEnd + RECORD_HEADER_LENGTH + keyBytes.length + value.length);
+        int offset = (int) dataEnd;
+        dataEnd += append(offset, keyBytes, value, expiresAt);
+        // Write the record before the slot refers to it
+        point(key, offset, expiresAt);
+        writeHeader();
+    }
+
+    /**
+     * Write a record at an offset within the mapping, which must be large enough.
+     *
+     * @return Length of the record
+     */
+    private int append(int offset, byte[] keyBytes, byte[] value, long expiresAt) {
+        buffer.putInt(offset, keyBytes.length);
+        buffer.putInt(offset + 4, value.length);
+        buffer.putLong(offset + 8, Math.max(expiresAt, 0));
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset + RECORD_HEADER_LENGTH);
+        target.put(keyBytes).put(value);
+        return RECORD_HEADER_LENGTH + keyBytes.length + value.length;
+    }
+
+    /**
+     * Point the slot of a key at a written record, updating the counters.
+     * The header is left to the caller.
+     */
+    private void point(String key, int offset, long expiresAt) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        int slot = findSlot(keyBytes, hash, false);
+        int position;
+        if (slot >= 0) {
+            position = slotPosition(slot);
+            int oldOffset = (int) buffer.getLong(position);
+            garbage += recordLength(oldOffset);
+            if (buffer.getLong(oldOffset + 8) > 0) {
+                expiring--;
+            }
+        } else {
+            position = slotPosition(-slot - 1);
+            if (buffer.getLong(position) == REMOVED) {
+                removed--;
+            }
+            count++;
+        }
+        if (expiresAt > 0) {
+            expiring++;
+        }
+        buffer.putLong(position, offset);
+        buffer.putInt(position + 8, hash);
+    }
+
+    @Override
+    public boolean remove(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            if (buffer == null) {
+                return false;
+            }
+            int slot = findSlot(keyBytes, hash(key), false);
+            if (slot < 0) {
+                return false;
+            }
+            removeSlot(slot);
+            writeHeader();
+            rebuildIfNeeded();
+            changed();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving cache: " + e.getMessage());
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeSlot(int slot) {
+        int position = slotPosition(slot);
+        int offset = (int) buffer.getLong(position);
+        garbage += recordLength(offset);
+        if (buffer.getLong(offset + 8) > 0) {
+            expiring--;
+        }
+        buffer.putLong(position, REMOVED);
+        count--;
+        removed++;
+    }
+
+    @Override
+    public List<String> removeExpired(long now) {
+        List<String> expired = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            // Scanning the index is only worth it if some entry can expire
+            if (buffer == null || expiring == 0) {
+                return expired;
+            }
+            for (int slot = 0; slot < slots; slot++) {
+                long offset = buffer.getLong(slotPosition(slot));
+                if (offset != EMPTY && offset != REMOVED && isExpired((int) offset, now)) {
+                    expired.add(readKey((int) offset));
+                    removeSlot(slot);
+                }
+            }
+            if (!expired.isEmpty()) {
+                writeHeader();
+                rebuildIfNeeded();
+                changed();
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving cache: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return expired;
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            if (buffer == null) {
+                return;
+            }
+            format(MIN_SLOTS);
+            buffer.putInt(H_MAGIC, MAGIC);
+            changed();
+        } catch (IOException e) {
+            System.err.println("Error saving cache: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.readLock().lock();
+        try {
+            if (buffer == null) {
+                return false;
+            }
+            lookups.increment();
+            int slot = findSlot(keyBytes, hash, true);
+            return slot >= 0 && !isExpired((int) buffer.getLong(slotPosition(slot)), System.currentTimeMillis());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Object> getAll() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> entries = new HashMap<>();
+            long now = System.currentTimeMillis();
+            for (int slot = 0; slot < slots && buffer != null; slot++) {
+                long offset = buffer.getLong(slotPosition(slot));
+                if (offset != EMPTY && offset != REMOVED && !isExpired((int) offset, now)) {
+                    entries.put(readKey((int) offset), readValue((int) offset));
+                }
+            }
+            return entries;
+        } catch (IOException e) {
+            System.err.println("Error reading cache: " + e.getMessage());
+            return new HashMap<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Object> action) {
+        lock.readLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (int slot = 0; slot < slots && buffer != null; slot++) {
+                long offset = buffer.getLong(slotPosition(slot));
+                if (offset != EMPTY && offset != REMOVED && !isExpired((int) offset, now)) {
+                    action.accept(readKey((int) offset), readValue((int) offset));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading cache: " + e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        lock.readLock().lock();
+        try {
+            // Only the key bytes of each record are read, the values stay in the mapping
+            long now = System.currentTimeMillis();
+            for (int slot = 0; slot < slots && buffer != null; slot++) {
+                long offset = buffer.getLong(slotPosition(slot));
+                if (offset != EMPTY && offset != REMOVED && !isExpired((int) offset, now)) {
+                    action.accept(readKey((int) offset));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void changed() {
+        if (durability == Durability.FSYNC) {
+            force();
+        }
+    }
+
+    private void force() {
+        long start = System.nanoTime();
+        buffer.force();
+        lastForceMicros = (System.nanoTime() - start) / 1000;
+        forces.increment();
+        forceMicros.add(lastForceMicros);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        lock.readLock().lock();
+        try {
+            if (buffer != null) {
+                force();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getFlushCount() {
+        return forces.sum();
+    }
+
+    @Override
+    public long getFlushMicros() {
+        return forceMicros.sum();
+    }
+
+    @Override
+    public long getLastFlushMicros() {
+        return lastForceMicros;
+    }
+
+    @Override
+    public long getDiskSize() {
+        lock.readLock().lock();
+        try {
+            return buffer != null ? buffer.capacity() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getHeapSize() {
+        // The entries are in the mapping, the heap only holds the buffer object
+        return 0;
+    }
+
+    @Override
+    public void setRemoteChangeListener(Consumer<String> listener) {
+        // No other process changes the file
+    }
+
+    @Override
+    public void shutdown() {
+        // Nothing is pending, the page cache is written back by the OS even after exit
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Error saving cache: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getStats() {
+        lock.readLock().lock();
+        try {
+            long lookupCount = lookups.sum();
+            String averageProbes = lookupCount == 0 ? "0"
+                : String.format(Locale.ROOT, "%.2f", (double) probes.sum() / lookupCount);
+            return "durability: " + durability.name().toLowerCase(Locale.ROOT) + ", entries: " + count
+                    + ", expiring: " + expiring + ", slots: " + slots + ", removed slots: " + removed
+                    + ", file: " + (buffer != null ? buffer.capacity() : 0) + " bytes, data: "
+                    + (dataEnd - dataStart(slots)) + " bytes, garbage: " + garbage + " bytes, lookups: "
+                    + lookupCount + ", average probes: " + averageProbes + ", rebuilds: " + rebuilds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the slot of a key.
+     *
+     * @return The slot holding the key, or -(slot + 1) of the slot a new key would use
+     */
+    private int findSlot(byte[] key, int hash, boolean countProbes) {
+        int mask = slots - 1;
+        int free = -1;
+        int slot = hash & mask;
+        int probeCount = 1;
+        // The index is at most half full, so an empty slot is always reached
+        while (true) {
+            int position = slotPosition(slot);
+            long offset = buffer.getLong(position);
+            if (offset == EMPTY) {
+                break;
+            }
+            if (offset == REMOVED) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (buffer.getInt(position + 8) == hash && keyEquals((int) offset, key)) {
+                free = -slot - 2; // found, encoded so the return below yields slot
+                break;
+            }
+            slot = (slot + 1) & mask;
+            probeCount++;
+        }
+        if (countProbes) {
+            probes.add(probeCount);
+        }
+        if (free < -1) {
+            return -free - 2;
+        }
+        // Reuse the first removed slot on the way, if any
+        return -(free >= 0 ? free : slot) - 1;
+    }
+
+    private boolean keyEquals(int offset, byte[] key) {
+        if (buffer.getInt(offset) != key.length) {
+            return false;
+        }
+        int start = offset + RECORD_HEADER_LENGTH;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readKey(int offset) {
+        byte[] key = new byte[buffer.getInt(offset)];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + RECORD_HEADER_LENGTH);
+        source.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private Object readValue(int offset) throws IOException {
+        byte[] value = new byte[buffer.getInt(offset + 4)];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + RECORD_HEADER_LENGTH + buffer.getInt(offset));
+        source.get(value);
+        return objectMapper.readValue(value, Object.class);
+    }
+
+    private boolean isExpired(int offset, long now) {
+        long expiresAt = buffer.getLong(offset + 8);
+        return expiresAt > 0 && expiresAt <= now;
+    }
+
+    private int recordLength(int offset) {
+        return RECORD_HEADER_LENGTH + buffer.getInt(offset) + buffer.getInt(offset + 4);
+    }
+
+    private void ensureCapacity(long size) throws IOException {
+        if (size > buffer.capacity()) {
+            map(Math.max(size, Math.min(2L * buffer.capacity(), Integer.MAX_VALUE)));
+        }
+    }
+
+    /**
+     * Rebuild the file when the index is more than half full, counting removed
+     * slots, or when more than half of the data is garbage.
+     */
+    private void rebuildIfNeeded() throws IOException {
+        long data = dataEnd - dataStart(slots);
+        if (2L * (count + removed) > slots) {
+            // Grow only if live entries fill the index, otherwise dropping removed slots is enough
+            rebuild(4L * count > slots ? slots * 2 : slots);
+        } else if (garbage > MIN_GARBAGE_FOR_REBUILD && 2 * garbage > data) {
+            rebuild(slots);
+        }
+    }
+
+    /**
+     * Rebuild if needed after a change that is already saved. A failed rebuild
+     * does not undo the change and is tried again after the next one.
+     */
+    private void rebuildQuietly() {
+        try {
+            rebuildIfNeeded();
+        } catch (IOException e) {
+            System.err.println("Error rebuilding cache file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the live entries with a new index into the rebuild file, then copy it
+     * over the mapped file. The rebuild file gets its magic only once it is
+     * complete, so it is either discarded or copied again at the next start.
+     */
+    private void rebuild(int newSlots) throws IOException {
+        long newDataStart = dataStart(newSlots);
+        ByteBuffer index = ByteBuffer.allocate(newSlots * SLOT_LENGTH);
+        long position = newDataStart;
+
+        try (FileChannel out = FileChannel.open(rebuildFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int slot = 0; slot < slots; slot++) {
+                int slotPos = slotPosition(slot);
+                long offset = buffer.getLong(slotPos);
+                if (offset == EMPTY || offset == REMOVED) {
+                    continue;
+                }
+                int hash = buffer.getInt(slotPos + 8);
+                int length = recordLength((int) offset);
+                ByteBuffer record = buffer.duplicate();
+                record.position((int) offset).limit((int) offset + length);
+                while (record.hasRemaining()) {
+                    out.write(record, position + record.position() - offset);
+                }
+
+                int target = hash & (newSlots - 1);
+                while (index.getLong(target * SLOT_LENGTH) != EMPTY) {
+                    target = (target + 1) & (newSlots - 1);
+                }
+                index.putLong(target * SLOT_LENGTH, position);
+                index.putInt(target * SLOT_LENGTH + 8, hash);
+                position += length;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(H_SLOTS, newSlots);
+            header.putInt(H_COUNT, count);
+            header.putLong(H_DATA_END, position);
+            header.putInt(H_EXPIRING, expiring);
+            writeAt(out, header, 0);
+            writeAt(out, index, HEADER_LENGTH);
+            out.force(true);
+            writeAt(out, ByteBuffer.allocate(4).putInt(0, MAGIC), H_MAGIC);
+            out.force(true);
+
+            copyBack(out);
+        }
+
+        Files.delete(rebuildFile);
+        slots = newSlots;
+        removed = 0;
+        dataEnd = position;
+        garbage = 0;
+        rebuilds++;
+    }
+
+    /**
+     * Copy the complete rebuild file over the mapped file.
+     */
+    private void copyBack(FileChannel rebuilt) throws IOException {
+        long size = rebuilt.size();
+        ensureCapacity(size + INITIAL_DATA_LENGTH);
+        ByteBuffer target = buffer.duplicate();
+        target.position(0).limit((int) size);
+        while (target.hasRemaining()) {
+            rebuilt.read(target, target.position());
+        }
+        buffer.force();
+    }
+
+    /**
+     * Finish a rebuild interrupted while its file was copied, or discard an
+     * incomplete rebuild file.
+     */
+    private void finishRebuild() throws IOException {
+        if (!Files.exists(rebuildFile)) {
+            return;
+        }
+        boolean complete;
+        try (FileChannel rebuilt = FileChannel.open(rebuildFile, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            rebuilt.read(magic, H_MAGIC);
+            complete = magic.getInt(0) == MAGIC;
+        }
+        if (complete) {
+            Files.copy(rebuildFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.delete(rebuildFile);
+    }
+
+    private static void writeAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static int slotsFor(int entries) {
+        int slotCount = MIN_SLOTS;
+        while (slotCount < 4L * entries) {
+            slotCount *= 2;
+        }
+        return slotCount;
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_LENGTH + slot * SLOT_LENGTH;
+    }
+
+    private static long dataStart(int slotCount) {
+        return HEADER_LENGTH + (long) slotCount * SLOT_LENGTH;
+    }
+
+    private static int hash(String key) {
+        // Keys like "key1", "key2" have neighbouring hash codes, mix them so linear probing does not cluster
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
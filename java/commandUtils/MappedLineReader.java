@@ -0,0 +1,249 @@
+package commandUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads ranges of lines of a file of any size through memory-mapped windows.
+ * Lines outside the range are skipped by scanning for line breaks without
+ * decoding them, and the last lines of a file are found by scanning backwards
+ * from the end. Only the line being decoded is held on the heap, so memory use
+ * does not grow with the size of the file.
+ *
+ * Lines are decoded as UTF-8 and end with \n or \r\n. Lines longer than
+ * {@value #MAX_LINE_BYTES} bytes are cut off.
+ */
+public final class MappedLineReader implements Closeable {
+    // Size of a mapped window; a mapping is limited to 2 GB
+    private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+    static final int MAX_LINE_BYTES = 1024 * 1024;
+    private static final String TRUNCATED = " [line truncated]";
+
+    private final FileChannel channel;
+    private final long size;
+    // End of the part read, the size unless a partial last line is left out
+    private long end;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private boolean truncated;
+
+    /**
+     * Receives the lines read.
+     */
+    @FunctionalInterface
+    public interface LineConsumer {
+        /**
+         * Accept a line.
+         *
+         * @param number Line number, starting at 1
+         * @param line Text of the line without line break
+         * @return true to continue, false to stop reading
+         */
+        boolean accept(long number, String line);
+    }
+
+    /**
+     * Open a file for reading.
+     *
+     * @param file File to read
+     * @throws IOException If the file cannot be opened
+     */
+    public MappedLineReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        end = size;
+    }
+
+    /**
+     * Get the size of the file in bytes when it was opened.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Leave a last line without line break out of all reads, since it may
+     * still be being written, e.g. before following the file.
+     *
+     * @return Position after the last line break, where the left out line starts
+     * @throws IOException If the file cannot be read
+     */
+    public long excludePartialLine() throws IOException {
+        long position = size;
+        while (position > 0) {
+            long start = Math.max(0, position - WINDOW_BYTES);
+            MappedByteBuffer window = map(start, position - start);
+            for (int i = (int) (position - start) - 1; i >= 0; i--) {
+                if (window.get(i) == '\n') {
+                    end = start + i + 1;
+                    return end;
+                }
+            }
+            position = start;
+        }
+        end = 0;
+        return end;
+    }
+
+    /**
+     * Read a range of lines.
+     *
+     * @param first Number of the first line to read, starting at 1
+     * @param last Number of the last line to read, or Long.MAX_VALUE to read to the end
+     * @param consumer Receives the lines
+     * @throws IOException If the file cannot be read
+     */
+    public void readLines(long first, long last, LineConsumer consumer) throws IOException {
+        read(0, 1, first, last, consumer);
+    }
+
+    /**
+     * Read the last lines of the file, starting the scan from the end.
+     *
+     * @param count Number of lines to read
+     * @param numbered Whether the line numbers are needed; counting them scans the rest of the file
+     * @param consumer Receives the lines, with number 0 if not numbered
+     * @throws IOException If the file cannot be read
+     */
+    public void readTail(long count, boolean numbered, LineConsumer consumer) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        long start = findTail(count);
+        long number = numbered ? countLines(start) + 1 : 0;
+        read(start, number, number, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Find where the last lines of the file start.
+     */
+    private long findTail(long count) throws IOException {
+        long position = end;
+        // A final line break ends the last line rather than starting an empty one
+        if (end > 0 && byteAt(end - 1) == '\n') {
+            position--;
+        }
+        long remaining = count;
+        while (position > 0) {
+            long start = Math.max(0, position - WINDOW_BYTES);
+            MappedByteBuffer window = map(start, position - start);
+            for (int i = (int) (position - start) - 1; i >= 0; i--) {
+                if (window.get(i) == '\n' && --remaining == 0) {
+                    return start + i + 1;
+                }
+            }
+            position = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Count the line breaks before a position.
+     */
+    private long countLines(long end) throws IOException {
+        long count = 0;
+        for (long position = 0; position < end; position += WINDOW_BYTES) {
+            int length = (int) Math.min(WINDOW_BYTES, end - position);
+            MappedByteBuffer window = map(position, length);
+            for (int i = 0; i < length; i++) {
+                if (window.get(i) == '\n') {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read forward from a position where a line starts.
+     *
+     * @param start Position of the first byte to read
+     * @param number Number of the line starting there
+     * @param first Number of the first line to pass to the consumer
+     * @param last Number of the last line to pass to the consumer
+     * @param consumer Receives the lines
+     */
+    private void read(long start, long number, long first, long last, LineConsumer consumer) throws IOException {
+        lineLength = 0;
+        truncated = false;
+        for (long position = start; position < end && number <= last; position += WINDOW_BYTES) {
+            int length = (int) Math.min(WINDOW_BYTES, end - position);
+            MappedByteBuffer window = map(position, length);
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (window.get(i) != '\n') {
+                    continue;
+                }
+                if (number >= first) {
+                    append(window, lineStart, i);
+                    if (!consumer.accept(number, takeLine())) {
+                        return;
+                    }
+                }
+                if (++number > last) {
+                    return;
+                }
+                lineStart = i + 1;
+            }
+            // The line continues in the next window
+            if (number >= first) {
+                append(window, lineStart, length);
+            }
+        }
+        if ((lineLength > 0 || truncated) && number >= first && number <= last) {
+            consumer.accept(number, takeLine());
+        }
+    }
+
+    private void append(MappedByteBuffer window, int from, int to) {
+        int length = Math.min(to - from, MAX_LINE_BYTES - lineLength);
+        if (length < to - from) {
+            truncated = true;
+        }
+        if (length <= 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        window.position(from);
+        window.get(line, lineLength, length);
+        lineLength += length;
+    }
+
+    private String takeLine() {
+        int length = lineLength;
+        if (length > 0 && line[length - 1] == '\r' && !truncated) {
+            length--;
+        }
+        String text = new String(line, 0, length, StandardCharsets.UTF_8);
+        if (truncated) {
+            text += TRUNCATED;
+        }
+        lineLength = 0;
+        truncated = false;
+        return text;
+    }
+
+    private byte byteAt(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+        return buffer.get(0);
+    }
+
+    private MappedByteBuffer map(long position, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
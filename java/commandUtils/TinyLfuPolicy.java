@@ -0,0 +1,198 @@
+package commandUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * W-TinyLFU: new keys enter a small LRU window; a key leaving the window only
+ * enters the main space if it was used more often than the key it would replace.
+ * Frequencies are estimated by a count-min sketch that also counts reads of keys
+ * not in the cache and halves all counts periodically, so one-off keys from a
+ * scan cannot push out the keys used all the time.
+ *
+ * The main space is a segmented LRU: keys start in probation and move to the
+ * protected segment when read again.
+ */
+final class TinyLfuPolicy implements EvictionPolicy {
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    // Access-ordered, the eldest key comes first
+    private final LinkedHashMap<String, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> protectedKeys = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    @Override
+    public void recordWrite(String key) {
+        if (window.containsKey(key) || probation.containsKey(key) || protectedKeys.containsKey(key)) {
+            recordAccess(key);
+            return;
+        }
+        sketch.increment(key);
+        window.put(key, Boolean.TRUE);
+        sketch.ensureCapacity(size());
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        sketch.increment(key);
+        if (window.get(key) != null || protectedKeys.get(key) != null) {
+            return;
+        }
+        if (probation.remove(key) != null) {
+            protectedKeys.put(key, Boolean.TRUE);
+            // Keep the protected segment to its share, demoted keys get another chance in probation
+            while (protectedKeys.size() > PROTECTED_SHARE * (probation.size() + protectedKeys.size())) {
+                probation.put(pollEldest(protectedKeys), Boolean.TRUE);
+            }
+        }
+    }
+
+    @Override
+    public void recordRemove(String key) {
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedKeys.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protectedKeys.clear();
+    }
+
+    @Override
+    public String selectVictim() {
+        int windowMax = Math.max(1, (int) (size() * WINDOW_SHARE));
+
+        // Keys that left the window while the cache had room are admitted without a contest
+        while (window.size() > windowMax + 1) {
+            probation.put(pollEldest(window), Boolean.TRUE);
+        }
+
+        String victim = eldest(probation);
+        if (victim == null) {
+            victim = eldest(protectedKeys);
+        }
+
+        if (window.size() > windowMax) {
+            String candidate = pollEldest(window);
+            if (victim == null) {
+                return candidate;
+            }
+            if (sketch.frequency(candidate) <= sketch.frequency(victim)) {
+                // Not admitted
+                return candidate;
+            }
+            probation.put(candidate, Boolean.TRUE);
+        }
+
+        if (victim == null) {
+            return pollEldest(window);
+        }
+        recordRemove(victim);
+        return victim;
+    }
+
+    private int size() {
+        return window.size() + probation.size() + protectedKeys.size();
+    }
+
+    private static String eldest(LinkedHashMap<String, Boolean> keys) {
+        Iterator<String> iterator = keys.keySet().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    private static String pollEldest(LinkedHashMap<String, Boolean> keys) {
+        Iterator<String> iterator = keys.keySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        String key = iterator.next();
+        iterator.remove();
+        return key;
+    }
+
+    @Override
+    public String getName() {
+        return "tinylfu";
+    }
+
+    /**
+     * Count-min sketch with four rows of counters saturating at 15.
+     */
+    private static final class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0x0cc1ff6d, 0x4bf1d1a5, 0x7a3d2e8b};
+
+        private byte[][] counters;
+        private int mask;
+        private int additions;
+        private int sampleSize;
+
+        FrequencySketch() {
+            resize(64);
+        }
+
+        /**
+         * Grow the sketch to fit the number of keys, which resets the counts.
+         */
+        void ensureCapacity(int keys) {
+            if (keys * 2 > counters[0].length) {
+                resize(Integer.highestOneBit(keys * 4 - 1) << 1);
+            }
+        }
+
+        private void resize(int width) {
+            counters = new byte[ROWS][width];
+            mask = width - 1;
+            additions = 0;
+            sampleSize = 10 * width;
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int row = 0; row < ROWS; row++) {
+                int index = index(hash, row);
+                if (counters[row][index] < MAX_COUNT) {
+                    counters[row][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                age();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < ROWS; row++) {
+                frequency = Math.min(frequency, counters[row][index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        /**
+         * Halve all counts so old popularity fades.
+         */
+        private void age() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            h ^= h >>> 16;
+            return h & mask;
+        }
+    }
+}
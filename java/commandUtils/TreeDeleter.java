@@ -0,0 +1,266 @@
+package commandUtils;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Deletes files and directory trees on a fork/join pool. Every directory is
+ * listed once and its entries are deleted in batches on the pool. An entry is
+ * deleted without looking at its type first: files, links and empty directories
+ * go at once, and only a directory that is not empty is listed in turn. A
+ * directory itself is deleted after all of its entries. Symbolic links are
+ * deleted, never followed.
+ *
+ * Entries that cannot be deleted are collected with the reason instead of
+ * stopping the deletion. An entry that is already gone does not count as a failure,
+ * and a directory left behind only because something in it failed is not reported
+ * again.
+ */
+public final class TreeDeleter {
+    // Set -Dconsolex.delete.parallelism=<threads> to change how many threads delete at once
+    private static final String PARALLELISM_PROPERTY = "consolex.delete.parallelism";
+    private static final int BATCH_SIZE = 256;
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+    private final LongAdder deleted = new LongAdder();
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    private volatile boolean cancelled;
+
+    /**
+     * Delete a file or directory tree. Blocks until done.
+     *
+     * @param root File or directory to delete
+     * @param progress Called every second while deleting with the number of deleted entries, or null
+     * @throws InterruptedException If the calling thread was interrupted; the deletion stops
+     */
+    public void delete(Path root, LongConsumer progress) throws InterruptedException {
+        int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors() * 2);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            ForkJoinTask<?> task = pool.submit(new Entry(root, null));
+            while (true) {
+                try {
+                    task.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    if (progress != null) {
+                        progress.accept(deleted.sum());
+                    }
+                } catch (ExecutionException e) {
+                    failures.add(root + ": " + e.getCause());
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the number of entries deleted so far.
+     */
+    public long getDeleted() {
+        return deleted.sum();
+    }
+
+    /**
+     * Get the entries that could not be deleted, each as "path: reason".
+     */
+    public List<String> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    /**
+     * Outcome of deleting a single entry.
+     */
+    private enum Outcome {
+        /** Deleted, or already gone. */
+        DELETED,
+        /** A directory that is not empty. */
+        NOT_EMPTY,
+        /** Failed and reported. */
+        FAILED
+    }
+
+    /**
+     * Delete a file, link or empty directory.
+     */
+    private Outcome deleteEntry(Path path) {
+        try {
+            Files.delete(path);
+            deleted.increment();
+        } catch (DirectoryNotEmptyException e) {
+            return Outcome.NOT_EMPTY;
+        } catch (NoSuchFileException e) {
+            // Already gone
+        } catch (IOException e) {
+            fail(path, e);
+            return Outcome.FAILED;
+        }
+        return Outcome.DELETED;
+    }
+
+    private void fail(Path path, IOException e) {
+        String reason;
+        if (e instanceof AccessDeniedException) {
+            reason = "access denied";
+        } else if (e instanceof DirectoryNotEmptyException) {
+            reason = "directory not empty";
+        } else if (e instanceof FileSystemException && ((FileSystemException) e).getReason() != null) {
+            reason = ((FileSystemException) e).getReason();
+        } else if (e.getMessage() != null && !e.getMessage().equals(path.toString())) {
+            reason = e.getMessage();
+        } else {
+            reason = e.getClass().getSimpleName();
+        }
+        failures.add(path + ": " + reason);
+    }
+
+    /**
+     * Deletes a file, or a directory after its entries.
+     */
+    private final class Entry extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+        // Null if not known yet
+        private Boolean directory;
+        // Whether the entry, or something in it, could not be deleted; read after join
+        private boolean failed;
+
+        Entry(Path path, Boolean directory) {
+            this.path = path;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            if (directory == null) {
+                try {
+                    directory = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                        .isDirectory();
+                } catch (NoSuchFileException e) {
+                    return;
+                } catch (IOException e) {
+                    fail(path, e);
+                    failed = true;
+                    return;
+                }
+            }
+            if (directory) {
+                failed = !deleteEntries();
+            }
+            if (cancelled) {
+                return;
+            }
+            Outcome outcome = deleteEntry(path);
+            if (outcome == Outcome.NOT_EMPTY && !failed) {
+                // Something was added meanwhile
+                fail(path, new DirectoryNotEmptyException(path.toString()));
+            }
+            if (outcome != Outcome.DELETED) {
+                failed = true;
+            }
+        }
+
+        /**
+         * Delete the entries of the directory.
+         *
+         * @return false if the directory could not be listed or an entry could not be deleted
+         */
+        private boolean deleteEntries() {
+            List<Batch> tasks = new ArrayList<>();
+            List<Path> batch = new ArrayList<>();
+            boolean listed = true;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                for (Path entry : entries) {
+                    if (cancelled) {
+                        break;
+                    }
+                    batch.add(entry);
+                    if (batch.size() == BATCH_SIZE) {
+                        Batch task = new Batch(batch);
+                        task.fork();
+                        tasks.add(task);
+                        batch = new ArrayList<>();
+                    }
+                }
+            } catch (IOException e) {
+                fail(path, e);
+                listed = false;
+            }
+            if (!batch.isEmpty()) {
+                Batch task = new Batch(batch);
+                task.invoke();
+                tasks.add(task);
+            }
+            // The directory can only be deleted once everything in it is gone
+            boolean deletedAll = listed;
+            for (Batch task : tasks) {
+                task.join();
+                deletedAll &= !task.failed;
+            }
+            return deletedAll;
+        }
+    }
+
+    /**
+     * Deletes entries of one directory, going into the directories that are not empty.
+     */
+    private final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> entries;
+        // Whether an entry could not be deleted; read after join
+        private boolean failed;
+
+        Batch(List<Path> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        protected void compute() {
+            List<Entry> directories = new ArrayList<>();
+            for (Path entry : entries) {
+                if (cancelled) {
+                    break;
+                }
+                Outcome outcome = deleteEntry(entry);
+                if (outcome == Outcome.NOT_EMPTY) {
+                    Entry task = new Entry(entry, true);
+                    task.fork();
+                    directories.add(task);
+                } else if (outcome == Outcome.FAILED) {
+                    failed = true;
+                }
+            }
+            for (Entry task : directories) {
+                task.join();
+                failed |= task.failed;
+            }
+        }
+    }
+}
@@ -2,14 +2,16 @@ package commandUtils;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Manages variables for the console application.
+ * Variables may be read and written by commands running in parallel.
  */
 public class VariableManager {
-    private static final Map<String, String> variables = new HashMap<>();
+    private static final Map<String, String> variables = new ConcurrentHashMap<>();
     private static final Pattern variablePattern = Pattern.compile("\\$(\\w+)|\\$\\{(\\w+)\\}");
     
     /**
@@ -57,6 +59,16 @@ public class VariableManager {
         return new HashMap<>(variables);
     }
     
+    /**
+     * Check whether a string references any variables.
+     * 
+     * @param input Input string
+     * @return true if the string contains $VAR or ${VAR}
+     */
+    public static boolean containsVariables(String input) {
+        return input != null && input.indexOf('$') >= 0 && variablePattern.matcher(input).find();
+    }
+    
     /**
      * Process a string and replace variables with their values.
      * Variables can be referenced as $VAR or ${VAR}.
@@ -78,7 +90,7 @@ public class VariableManager {
             
             if (value == null) {
                 // Leave variable reference unchanged if not defined
-                matcher.appendReplacement(result, matcher.group(0));
+                matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group(0)));
             } else {
                 // Replace variable with its value
                 matcher.appendReplacement(result, Matcher.quoteReplacement(value));
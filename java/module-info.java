@@ -11,6 +11,7 @@ module Console{
     requires com.fasterxml.jackson.annotation;
 	requires java.desktop;
 	requires jdk.jsobject;
+	requires static java.compiler;
     
     opens Core to javafx.fxml;
     opens ui to javafx.fxml;
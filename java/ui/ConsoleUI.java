@@ -1,29 +1,42 @@
 package ui;
 
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
-import command.Command;
+import command.AliasRegistry;
+import command.CommandEngine;
 import command.CommandExecutor;
 import command.CommandParser;
+import command.CommandRegistry;
 import command.CommandResult;
 import command.ParsedCommand;
-import command.impl.Alias;
+import command.StatsRegistry;
+import commandUtils.Cache;
+import commandUtils.DirectoryCache;
+import commandUtils.FileEntry;
 import commandUtils.FileManager;
 import javafx.application.Platform;
+import javafx.concurrent.Worker;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.paint.Color;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
+import netscape.javascript.JSObject;
 
 /**
  * Main UI component for the console application. This class handles user input
@@ -32,9 +45,12 @@ import javafx.scene.web.WebView;
 public class ConsoleUI extends BorderPane {
 	private final WebView webView; // TextFlow for color formatting
 	private final WebEngine webEngine;
+	private final OutputRenderer outputRenderer;
 	private final TextField inputField;
 	private final CommandExecutor commandExecutor;
 	private final CommandParser commandParser;
+	private final CommandEngine commandEngine;
+	private final ProgressIndicator busyIndicator;
 	private final List<String> commandHistory;
 	private int historyIndex = -1;
 	private String lastTabCompletion = null;
@@ -47,6 +63,7 @@ public class ConsoleUI extends BorderPane {
 		commandExecutor = new CommandExecutor();
 		commandParser = new CommandParser();
 		commandParser.setCommandExecutor(commandExecutor);
+		commandEngine = new CommandEngine(commandExecutor, commandParser, this);
 		commandHistory = new ArrayList<>();
 
 		// Output area setup - using TextFlow for color formatting
@@ -55,7 +72,17 @@ public class ConsoleUI extends BorderPane {
 		webEngine = webView.getEngine();
 		String cssPath = getClass().getResource("/ui/console.css").toExternalForm();
 		webEngine.setUserStyleSheetLocation(cssPath);
+		outputRenderer = new OutputRenderer(webEngine);
+		webEngine.getLoadWorker().stateProperty().addListener((observable, oldState, newState) -> {
+			if (newState == Worker.State.SUCCEEDED) {
+				// Lets the page fetch lines that are no longer in the DOM
+				JSObject window = (JSObject) webEngine.executeScript("window");
+				window.setMember("scrollbackBridge", outputRenderer.getBridge());
+				outputRenderer.pageLoaded();
+			}
+		});
 		webEngine.load(getClass().getResource("/ui/console.html").toExternalForm());
+		StatsRegistry.register("render", outputRenderer::getStats);
 
 		// Input field setup
 		inputField = new TextField();
@@ -65,9 +92,20 @@ public class ConsoleUI extends BorderPane {
 		// Setup context menu for input field
 		setupInputFieldContextMenu();
 
+		// Busy indicator shown while a command is running
+		busyIndicator = new ProgressIndicator(ProgressIndicator.INDETERMINATE_PROGRESS);
+		busyIndicator.getStyleClass().add("console-busy");
+		busyIndicator.setPrefSize(20, 20);
+		busyIndicator.setVisible(false);
+		commandEngine.setBusyListener(busy -> busyIndicator.setVisible(busy));
+
+		HBox inputBar = new HBox(5, inputField, busyIndicator);
+		inputBar.setAlignment(Pos.CENTER_LEFT);
+		HBox.setHgrow(inputField, Priority.ALWAYS);
+
 		// Component layout
 		setCenter(webView);
-		setBottom(inputField);
+		setBottom(inputBar);
 		setPadding(new Insets(10));
 
 		// Welcome message initialization
@@ -86,48 +124,20 @@ public class ConsoleUI extends BorderPane {
 						commandHistory.add(input);
 					historyIndex = commandHistory.size();
 
-					// Execute command(s)
-					try {
-						// Split input by semicolons to handle multiple commands
-						String[] commands = input.split(";");
-
-						boolean isFirst = true;
-
-						for (String command : commands) {
-							String trimmedCommand = command.trim();
-							if (trimmedCommand.isEmpty()) {
-								continue; // Skip empty commands (e.g., if input ends with semicolon)
-							}
-
-							// Parse and execute the command
-							ParsedCommand parsedCommand = commandParser.parse(trimmedCommand);
-							if (parsedCommand != null) {
-								CommandResult result = commandExecutor.execute(parsedCommand, this);
-								if (isFirst) {
-									if (!(parsedCommand.getCommandName().equals("clear") && parsedCommand.getCommandName().equals("cls")))
-										appendToOutput(
-												FileManager.getCurrentDirectory().toString() + " > " + input + "\n",
-												Color.WHITE);
-									isFirst = false;
-								}
-								if (result.hasOutput()) {
-
-									if (result.isError()) {
-										appendToOutput(result.getOutput() + "\n", Color.RED);
-									} else {
-										appendToOutput(result.getOutput() + "\n", Color.LIGHTBLUE);
-									}
-								}
-							}
-						}
-					} catch (Exception e) {
-						appendToOutput("Error: " + e.getMessage() + "\n", Color.RED);
-					}
+					// Execute command(s) on the worker thread
+					executeInput(input);
 
 					// Clear input field
 					inputField.clear();
 					lastTabCompletion = null;
 				}
+			} else if (event.getCode() == KeyCode.C && event.isControlDown() && commandEngine.isBusy()
+					&& inputField.getSelectedText().isEmpty()) {
+				// Ctrl+C interrupts the running command unless there is text to copy
+				event.consume();
+				if (commandEngine.cancel()) {
+					appendToOutput("^C\n", Color.GRAY);
+				}
 			} else if (event.getCode() == KeyCode.UP) {
 				navigateHistory(-1);
 				event.consume();
@@ -146,6 +156,46 @@ public class ConsoleUI extends BorderPane {
 
 	}
 
+	/**
+	 * Submits the input to the command engine and renders the results as they arrive
+	 */
+	private void executeInput(String input) {
+		commandEngine.submit(input, new CommandEngine.Listener() {
+			private boolean isFirst = true;
+
+			private void showPrompt() {
+				if (isFirst) {
+					appendToOutput(FileManager.getCurrentDirectory().toString() + " > " + input + "\n", Color.WHITE);
+					isFirst = false;
+				}
+			}
+
+			@Override
+			public void onOutput(String text, boolean error) {
+				showPrompt();
+				appendToOutput(text, error ? Color.RED : Color.LIGHTBLUE);
+			}
+
+			@Override
+			public void onResult(ParsedCommand parsedCommand, CommandResult result) {
+				showPrompt();
+				if (result != null && result.hasOutput()) {
+
+					if (result.isError()) {
+						appendToOutput(result.getOutput() + "\n", Color.RED);
+					} else {
+						appendToOutput(result.getOutput() + "\n", Color.LIGHTBLUE);
+					}
+				}
+			}
+
+			@Override
+			public void onError(Exception e) {
+				appendToOutput("Error: " + e.getMessage() + "\n", Color.RED);
+			}
+		});
+	}
+
 	/**
 	 * Sets up context menu for the input field
 	 */
@@ -201,13 +251,23 @@ public class ConsoleUI extends BorderPane {
 			return;
 		}
 
-		// New auto-completion
-		Set<String> commands = getAvailableCommands();
-		tabCompletionOptions.clear();
-
-		// Filter commands that start with the current input
-		tabCompletionOptions = commands.stream().filter(cmd -> cmd.startsWith(currentInput))
-				.collect(Collectors.toList());
+		// New auto-completion: the first word is a command, the last word after it a path
+		String text = inputField.getText().stripLeading();
+		int wordStart = text.lastIndexOf(' ') + 1;
+		String word = text.substring(wordStart);
+		int nameStart = wordStart == 0 ? 0 : Math.max(word.lastIndexOf('/'), word.lastIndexOf('\\')) + 1;
+		String head = text.substring(0, wordStart + nameStart);
+		String prefix = word.substring(nameStart);
+
+		List<String> names;
+		if (wordStart == 0) {
+			// Filter commands that start with the current input
+			names = getAvailableCommands().stream().filter(cmd -> cmd.startsWith(prefix))
+					.collect(Collectors.toList());
+		} else {
+			names = getPathCompletions(word.substring(0, nameStart), prefix);
+		}
+		tabCompletionOptions = names.stream().map(name -> head + name).collect(Collectors.toList());
 
 		if (tabCompletionOptions.isEmpty()) {
 			// No matches
@@ -221,7 +281,7 @@ public class ConsoleUI extends BorderPane {
 			tabCompletionIndex = 0;
 		} else {
 			// Multiple matches, show all options
-			appendToOutput("Options: " + String.join(", ", tabCompletionOptions) + "\n", Color.GRAY);
+			appendToOutput("Options: " + String.join(", ", names) + "\n", Color.GRAY);
 
 			// Find common prefix
 			String commonPrefix = findCommonPrefix(tabCompletionOptions);
@@ -257,30 +317,30 @@ public class ConsoleUI extends BorderPane {
 		return first.substring(0, prefixLength);
 	}
 
+	/**
+	 * Gets the entries of a directory that start with a prefix, directories with a
+	 * trailing slash. The listing comes from the shared directory cache, so pressing
+	 * Tab again does not read the directory again.
+	 */
+	private List<String> getPathCompletions(String directory, String prefix) {
+		try {
+			Path path = FileManager.resolvePath(directory.isEmpty() ? "." : directory);
+			return DirectoryCache.getInstance().list(path).stream().map(FileEntry::getDisplayName)
+					.filter(name -> name.startsWith(prefix)).sorted().collect(Collectors.toList());
+		} catch (IOException | InvalidPathException e) {
+			return new ArrayList<>();
+		}
+	}
+
 	/**
 	 * Gets a list of available commands, including aliases
 	 */
 	private Set<String> getAvailableCommands() {
-		Set<String> commands = new TreeSet<>();
-
 		// Add all system commands
-		for (Command cmd : commandExecutor.getCommands().values()) {
-			commands.add(cmd.getName());
-		}
+		Set<String> commands = new TreeSet<>(CommandRegistry.getInstance().getCommandNames());
 
 		// Add all user aliases
-		try {
-			// Get all aliases from cache
-			Map<String, Object> allAliases = Alias.getAllAliases();
-
-			// Add alias names to the command list
-			for (String aliasName : allAliases.keySet()) {
-				commands.add(aliasName);
-			}
-		} catch (Exception e) {
-			// Ignore errors when getting aliases
-			System.err.println("Error getting aliases: " + e.getMessage());
-		}
+		commands.addAll(AliasRegistry.getInstance().getNames());
 
 		return commands;
 	}
@@ -310,23 +370,23 @@ public class ConsoleUI extends BorderPane {
 	}
 
 	/**
-	 * Adds text to the console output with the specified color
+	 * Adds text to the console output with the specified color. The text is
+	 * rendered with the next frame together with all other pending output
 	 */
 
 	@SuppressWarnings("exports")
 	public void appendToOutput(String text, Color color) {
-		if (webEngine == null)
+		if (outputRenderer == null)
 			return;
 
-		Platform.runLater(() -> {
-			try {
-				String colorName = getColorName(color);
-				webEngine.executeScript("if (typeof appendToConsole === 'function') { appendToConsole('"
-						+ escapeJavaScript(text) + "', '" + colorName + "'); }");
-			} catch (Exception e) {
-				System.err.println("Ошибка при добавлении текста: " + e.getMessage());
-			}
-		});
+		outputRenderer.append(text, getColorName(color));
+	}
+
+	/**
+	 * Gets the counters of the output renderer
+	 */
+	public OutputRenderer.Stats getRenderStats() {
+		return outputRenderer.getStats();
 	}
 
 	private String getColorName(Color color) {
@@ -349,29 +409,21 @@ public class ConsoleUI extends BorderPane {
 	}
 
 	/**
-	 * Escape special characters for JavaScript strings
+	 * Clears the console output
 	 */
-	private String escapeJavaScript(String text) {
-		if (text == null)
-			return "";
+	public void clearOutput() {
+		if (outputRenderer == null)
+			return;
 
-		return text.replace("\\", "\\\\").replace("'", "\\'").replace("\n", "\\n").replace("\r", "\\r");
+		outputRenderer.clear();
 	}
 
 	/**
-	 * Clears the console output
+	 * Stops the command worker, interrupting a running command, and writes pending cache changes
 	 */
-	public void clearOutput() {
-		if (webEngine == null)
-			return;
-
-		Platform.runLater(() -> {
-			try {
-				webEngine.executeScript("if (typeof clearConsole === 'function') { clearConsole(); }");
-			} catch (Exception e) {
-				System.err.println("Ошибка при очистке консоли: " + e.getMessage());
-			}
-		});
+	public void shutdown() {
+		commandEngine.shutdown();
+		Cache.shutdown();
 	}
 
 	/**
@@ -0,0 +1,367 @@
+package ui;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.web.WebEngine;
+
+/**
+ * Renders console output into the WebView in batches. Appended text is
+ * stored in a {@link ScrollbackBuffer} and flushed at most once per frame with
+ * a single script call, so the page inserts one DOM fragment and scrolls once
+ * no matter how many appends happened in between.
+ *
+ * The page only keeps a window of lines in the DOM; lines scrolled out of it
+ * are fetched back from the scrollback through {@link Bridge}.
+ *
+ * Appending and clearing may be called from any thread; rendering always
+ * happens on the JavaFX application thread.
+ */
+public class OutputRenderer {
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+	// Set -Dconsolex.scrollback=<lines> to change the number of lines kept
+	private static final String SCROLLBACK_PROPERTY = "consolex.scrollback";
+	private static final int DEFAULT_SCROLLBACK_LINES = 50000;
+	// Must match WINDOW_LINES in console.html
+	private static final int WINDOW_LINES = 500;
+
+	private final WebEngine webEngine;
+	private final AnimationTimer frameTimer;
+	private final Bridge bridge = new Bridge();
+
+	// Guarded by this
+	private final ScrollbackBuffer scrollback = new ScrollbackBuffer(
+			Integer.getInteger(SCROLLBACK_PROPERTY, DEFAULT_SCROLLBACK_LINES));
+	// First line changed since the last frame, or -1 if nothing changed
+	private long dirtyFrom = -1;
+	private boolean clearPending = false;
+	private boolean scheduled = false;
+	private boolean pageLoaded = false;
+	private long firstPendingNanos;
+
+	// Counters, guarded by this
+	private long totalAppends;
+	private long totalFlushes;
+	private long windowStartNanos = System.nanoTime();
+	private long windowAppends;
+	private double appendsPerSecond;
+	private long lastFlushLatencyNanos;
+	private long maxFlushLatencyNanos;
+	private long totalFlushLatencyNanos;
+
+	/**
+	 * Create a renderer writing into the page loaded by the given engine.
+	 * Nothing is rendered until {@link #pageLoaded()} is called.
+	 *
+	 * @param webEngine Engine of the console WebView
+	 */
+	@SuppressWarnings("exports")
+	public OutputRenderer(WebEngine webEngine) {
+		this.webEngine = webEngine;
+		this.frameTimer = new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				flush();
+			}
+		};
+	}
+
+	/**
+	 * Queue text for rendering with the given color class.
+	 *
+	 * @param text Text to append, may contain line breaks
+	 * @param colorName Name of the color used by the page
+	 */
+	public void append(String text, String colorName) {
+		if (text == null || text.isEmpty()) {
+			return;
+		}
+
+		synchronized (this) {
+			totalAppends++;
+			windowAppends++;
+
+			long changedFrom = scrollback.append(text, colorName);
+			if (dirtyFrom < 0) {
+				dirtyFrom = changedFrom;
+				firstPendingNanos = System.nanoTime();
+			}
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Clear the console and the scrollback.
+	 */
+	public synchronized void clear() {
+		scrollback.clear();
+		dirtyFrom = -1;
+		clearPending = true;
+		firstPendingNanos = System.nanoTime();
+		scheduleFlush();
+	}
+
+	/**
+	 * Start rendering once the console page has been loaded.
+	 * Text appended before the page was ready is rendered in the first frame.
+	 */
+	public synchronized void pageLoaded() {
+		pageLoaded = true;
+		if (dirtyFrom >= 0 || clearPending) {
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Get the object the page uses to fetch lines from the scrollback.
+	 * It has to be registered as {@code window.scrollbackBridge} after every page load.
+	 *
+	 * @return The bridge
+	 */
+	public Bridge getBridge() {
+		return bridge;
+	}
+
+	/**
+	 * Get a snapshot of the rendering counters.
+	 *
+	 * @return Current statistics
+	 */
+	public synchronized Stats getStats() {
+		updateRate(System.nanoTime());
+		return new Stats(totalAppends, totalFlushes, appendsPerSecond, lastFlushLatencyNanos / 1000,
+				maxFlushLatencyNanos / 1000, totalFlushes == 0 ? 0 : totalFlushLatencyNanos / totalFlushes / 1000,
+				scrollback.size());
+	}
+
+	private void scheduleFlush() {
+		if (!scheduled && pageLoaded) {
+			scheduled = true;
+			Platform.runLater(frameTimer::start);
+		}
+	}
+
+	/**
+	 * Render everything queued since the last frame. Called once per frame on
+	 * the JavaFX application thread while there is output to render.
+	 */
+	private void flush() {
+		String script;
+		long queuedSince;
+
+		synchronized (this) {
+			if (dirtyFrom < 0 && !clearPending) {
+				// Nothing arrived during the last frame, stop requesting frames
+				frameTimer.stop();
+				scheduled = false;
+				return;
+			}
+
+			script = buildScript();
+			queuedSince = firstPendingNanos;
+			dirtyFrom = -1;
+			clearPending = false;
+		}
+
+		try {
+			webEngine.executeScript(script);
+		} catch (Exception e) {
+			System.err.println("Ошибка при добавлении текста: " + e.getMessage());
+		}
+
+		long now = System.nanoTime();
+		synchronized (this) {
+			long latency = now - queuedSince;
+			totalFlushes++;
+			lastFlushLatencyNanos = latency;
+			maxFlushLatencyNanos = Math.max(maxFlushLatencyNanos, latency);
+			totalFlushLatencyNanos += latency;
+			updateRate(now);
+		}
+	}
+
+	/**
+	 * Recompute the append rate once a second.
+	 */
+	private void updateRate(long now) {
+		long elapsed = now - windowStartNanos;
+		if (elapsed >= NANOS_PER_SECOND) {
+			appendsPerSecond = windowAppends * (double) NANOS_PER_SECOND / elapsed;
+			windowAppends = 0;
+			windowStartNanos = now;
+		}
+	}
+
+	/**
+	 * Build the single script call rendering the lines changed since the last
+	 * frame. At most one window of lines is sent, older ones are only fetched
+	 * if the user scrolls back to them.
+	 */
+	private String buildScript() {
+		StringBuilder script = new StringBuilder(256);
+		if (clearPending) {
+			script.append("if (typeof clearConsole === 'function') { clearConsole(); }");
+		}
+		if (dirtyFrom >= 0) {
+			long from = Math.max(dirtyFrom, scrollback.getNextSeq() - WINDOW_LINES);
+			script.append("if (typeof appendLines === 'function') { appendLines(");
+			appendLines(script, from, scrollback.getNextSeq());
+			script.append("); }");
+		}
+		return script.toString();
+	}
+
+	/**
+	 * Write the lines in the given range that are still in the scrollback as a
+	 * JSON object: {"oldest": n, "latest": n, "from": n, "lines": [text, color, ...]}.
+	 */
+	private void appendLines(StringBuilder json, long from, long to) {
+		from = Math.max(from, scrollback.getFirstSeq());
+		to = Math.min(to, scrollback.getNextSeq());
+
+		json.append("{\"oldest\":").append(scrollback.getFirstSeq())
+				.append(",\"latest\":").append(scrollback.getNextSeq() - 1)
+				.append(",\"from\":").append(from)
+				.append(",\"lines\":[");
+		for (long seq = from; seq < to; seq++) {
+			if (seq > from) {
+				json.append(',');
+			}
+			appendQuoted(json, scrollback.getLine(seq));
+			json.append(',');
+			appendQuoted(json, scrollback.getColor(seq));
+		}
+		json.append("]}");
+	}
+
+	/**
+	 * Append text as a JSON string, escaping in one pass.
+	 * The result is also a valid JavaScript string literal.
+	 */
+	private static void appendQuoted(StringBuilder json, CharSequence text) {
+		json.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			case '\u2028':
+				json.append("\\u2028");
+				break;
+			case '\u2029':
+				json.append("\\u2029");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Object exposed to the console page for reading the scrollback.
+	 * Called by the page on the JavaFX application thread.
+	 */
+	public final class Bridge {
+
+		/**
+		 * Get lines from the scrollback.
+		 *
+		 * @param from Sequence number of the first line
+		 * @param count Maximum number of lines
+		 * @return JSON object with the lines that are still available
+		 */
+		public String getLines(long from, int count) {
+			synchronized (OutputRenderer.this) {
+				StringBuilder json = new StringBuilder(count * 64 + 64);
+				appendLines(json, from, from + Math.max(0, count));
+				return json.toString();
+			}
+		}
+	}
+
+	/**
+	 * Snapshot of the rendering counters.
+	 */
+	public static final class Stats {
+		private final long totalAppends;
+		private final long totalFlushes;
+		private final double appendsPerSecond;
+		private final long lastFlushLatencyMicros;
+		private final long maxFlushLatencyMicros;
+		private final long averageFlushLatencyMicros;
+		private final int scrollbackLines;
+
+		Stats(long totalAppends, long totalFlushes, double appendsPerSecond, long lastFlushLatencyMicros,
+				long maxFlushLatencyMicros, long averageFlushLatencyMicros, int scrollbackLines) {
+			this.totalAppends = totalAppends;
+			this.totalFlushes = totalFlushes;
+			this.appendsPerSecond = appendsPerSecond;
+			this.lastFlushLatencyMicros = lastFlushLatencyMicros;
+			this.maxFlushLatencyMicros = maxFlushLatencyMicros;
+			this.averageFlushLatencyMicros = averageFlushLatencyMicros;
+			this.scrollbackLines = scrollbackLines;
+		}
+
+		public long getTotalAppends() {
+			return totalAppends;
+		}
+
+		public long getTotalFlushes() {
+			return totalFlushes;
+		}
+
+		/**
+		 * Appends per second, measured over the last completed one-second window.
+		 */
+		public double getAppendsPerSecond() {
+			return appendsPerSecond;
+		}
+
+		/**
+		 * Time from the first queued append of the last frame until it was rendered.
+		 */
+		public long getLastFlushLatencyMicros() {
+			return lastFlushLatencyMicros;
+		}
+
+		public long getMaxFlushLatencyMicros() {
+			return maxFlushLatencyMicros;
+		}
+
+		public long getAverageFlushLatencyMicros() {
+			return averageFlushLatencyMicros;
+		}
+
+		/**
+		 * Number of lines currently kept in the scrollback.
+		 */
+		public int getScrollbackLines() {
+			return scrollbackLines;
+		}
+
+		@Override
+		public String toString() {
+			return "appends: " + totalAppends + " (" + Math.round(appendsPerSecond) + "/s), flushes: "
+					+ totalFlushes + ", flush latency: last " + lastFlushLatencyMicros + " us, avg "
+					+ averageFlushLatencyMicros + " us, max " + maxFlushLatencyMicros + " us, scrollback: "
+					+ scrollbackLines + " lines";
+		}
+	}
+}
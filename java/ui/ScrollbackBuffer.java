@@ -0,0 +1,156 @@
+package ui;
+
+/**
+ * Fixed-capacity ring buffer holding the console output line by line.
+ * Every line gets an increasing sequence number, so the page can ask for lines
+ * by number even after older lines have been dropped. Once the capacity is
+ * reached the oldest line is overwritten, so memory use stays flat no matter
+ * how much output a session produces.
+ *
+ * This class is not thread-safe, callers synchronize access.
+ */
+public class ScrollbackBuffer {
+	// Longer lines are wrapped so a single huge line cannot defeat the cap
+	static final int MAX_LINE_LENGTH = 16384;
+
+	private final String[] lines;
+	private final String[] colors;
+	private final StringBuilder openLine = new StringBuilder();
+	private long firstSeq = 0;
+	private long nextSeq = 0;
+	// Whether the last line is still being written (no line break yet)
+	private boolean lastOpen = false;
+
+	/**
+	 * Create a buffer keeping at most the given number of lines.
+	 *
+	 * @param capacity Maximum number of lines
+	 */
+	public ScrollbackBuffer(int capacity) {
+		this.lines = new String[Math.max(1, capacity)];
+		this.colors = new String[lines.length];
+	}
+
+	/**
+	 * Append text, splitting it into lines. Text without a trailing line break
+	 * stays open and is continued by the next append of the same color.
+	 *
+	 * @param text Text to append
+	 * @param colorName Color of the text
+	 * @return Sequence number of the first line that was added or changed
+	 */
+	public long append(String text, String colorName) {
+		if (lastOpen && !colors[index(nextSeq - 1)].equals(colorName)) {
+			closeLine();
+		}
+
+		long changedFrom = lastOpen ? nextSeq - 1 : nextSeq;
+		int start = 0;
+		int length = text.length();
+
+		while (start < length) {
+			if (!lastOpen) {
+				addLine(colorName);
+			}
+
+			int newline = text.indexOf('\n', start);
+			int end = newline < 0 ? length : newline;
+			int room = MAX_LINE_LENGTH - openLine.length();
+
+			if (end - start > room) {
+				// Wrap and continue on a new line of the same color
+				openLine.append(text, start, start + room);
+				closeLine();
+				start += room;
+				continue;
+			}
+
+			openLine.append(text, start, end);
+			if (newline < 0) {
+				break;
+			}
+			closeLine();
+			start = newline + 1;
+		}
+
+		if (lastOpen) {
+			// Keep the stored line in sync so readers always see the current text
+			lines[index(nextSeq - 1)] = openLine.toString();
+		}
+		return changedFrom;
+	}
+
+	/**
+	 * Remove all lines. Sequence numbers keep increasing.
+	 */
+	public void clear() {
+		openLine.setLength(0);
+		lastOpen = false;
+		for (long seq = firstSeq; seq < nextSeq; seq++) {
+			lines[index(seq)] = null;
+			colors[index(seq)] = null;
+		}
+		firstSeq = nextSeq;
+	}
+
+	/**
+	 * Get the sequence number of the oldest line still in the buffer.
+	 */
+	public long getFirstSeq() {
+		return firstSeq;
+	}
+
+	/**
+	 * Get the sequence number the next line will get.
+	 */
+	public long getNextSeq() {
+		return nextSeq;
+	}
+
+	/**
+	 * Get the number of lines in the buffer.
+	 */
+	public int size() {
+		return (int) (nextSeq - firstSeq);
+	}
+
+	/**
+	 * Get the text of a line.
+	 *
+	 * @param seq Sequence number between {@link #getFirstSeq()} and {@link #getNextSeq()}
+	 */
+	public String getLine(long seq) {
+		return lines[index(seq)];
+	}
+
+	/**
+	 * Get the color of a line.
+	 *
+	 * @param seq Sequence number between {@link #getFirstSeq()} and {@link #getNextSeq()}
+	 */
+	public String getColor(long seq) {
+		return colors[index(seq)];
+	}
+
+	private void addLine(String colorName) {
+		if (nextSeq - firstSeq == lines.length) {
+			// Full, the oldest line is overwritten
+			firstSeq++;
+		}
+		int slot = index(nextSeq);
+		lines[slot] = "";
+		colors[slot] = colorName;
+		nextSeq++;
+		lastOpen = true;
+	}
+
+	private void closeLine() {
+		lines[index(nextSeq - 1)] = openLine.toString();
+		openLine.setLength(0);
+		lastOpen = false;
+	}
+
+	private int index(long seq) {
+		return (int) (seq % lines.length);
+	}
+}